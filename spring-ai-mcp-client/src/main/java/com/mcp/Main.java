@@ -2,12 +2,17 @@ package com.mcp;
 
 import com.mcp.cli.CommandsGroup;
 import com.mcp.cli.CustomExitCommand;
+import com.mcp.services.ChatMemoryProperties;
+import com.mcp.services.McpServersProperties;
+import com.mcp.services.ToolCacheProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.shell.command.annotation.EnableCommand;
 
 @SpringBootApplication
 @EnableCommand({ CommandsGroup.class, CustomExitCommand.class})
+@EnableConfigurationProperties({ McpServersProperties.class, ToolCacheProperties.class, ChatMemoryProperties.class })
 public class Main {
     public static void main(String[] args) {
         SpringApplication.run(Main.class, args);
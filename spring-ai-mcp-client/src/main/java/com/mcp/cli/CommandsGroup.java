@@ -1,8 +1,17 @@
 package com.mcp.cli;
 
+import java.io.PrintWriter;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import com.mcp.services.CompactingChatMemory;
 import com.mcp.services.McpClientService;
+import com.mcp.services.McpServerRegistry;
+import com.mcp.services.McpServerStatus;
+import com.mcp.services.ToolResultCache;
+import com.mcp.services.TokenTimings;
+import org.jline.terminal.Terminal;
+import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.shell.command.CommandRegistration;
 import org.springframework.shell.command.annotation.Command;
 import org.springframework.shell.command.annotation.Option;
@@ -18,23 +27,103 @@ public class CommandsGroup {
     // Service to handle MCP client operations
     private final McpClientService mcpClientService;
 
+    // Configured MCP servers
+    private final McpServerRegistry mcpServers;
+
+    // Client-side cache of tool results
+    private final ToolResultCache toolResultCache;
+
+    // Conversation memory of the session
+    private final CompactingChatMemory chatMemory;
+
+    // Shell terminal the answers are rendered to
+    private final Terminal terminal;
+
     /**
      * Constructor to inject the McpClientService dependency.
      * @param mcpClientService the service to handle MCP commands
+     * @param mcpServers the configured MCP servers
+     * @param toolResultCache the cache of tool results
+     * @param chatMemory the conversation memory
+     * @param terminal the shell terminal
      */
-    public CommandsGroup(McpClientService mcpClientService) {
+    public CommandsGroup(McpClientService mcpClientService, McpServerRegistry mcpServers,
+                         ToolResultCache toolResultCache, CompactingChatMemory chatMemory, Terminal terminal) {
         this.mcpClientService = mcpClientService;
+        this.mcpServers = mcpServers;
+        this.toolResultCache = toolResultCache;
+        this.chatMemory = chatMemory;
+        this.terminal = terminal;
     }
 
     /**
      * Command method to execute MCP commands interactively.
-     * It converts the input arguments into a space-separated string and fetches the response.
+     * It converts the input arguments into a space-separated string and prints the response token by token,
+     * as it is generated, followed by its latency.
      * @param args the input arguments for the command, expected to be comma-separated
      */
     @Command(command = "mcp", interactionMode = InteractionMode.INTERACTIVE, description = "Execute MCP commands")
     public void executeMcpCommand(@Option(arity = CommandRegistration.OptionArity.ZERO_OR_MORE) final String args) {
         final String formattedInput = formatInputArgs(args);
-        mcpClientService.getResponse(formattedInput);
+        final PrintWriter writer = terminal.writer();
+        final TokenTimings timings = new TokenTimings();
+
+        writer.println("Preparing the answer...");
+        terminal.flush();
+        try (Stream<String> tokens = mcpClientService.getResponse(formattedInput, timings)) {
+            tokens.forEach(token -> {
+                writer.print(token);
+                terminal.flush();
+            });
+        } finally {
+            writer.println();
+            writer.println(timings.summary());
+            terminal.flush();
+        }
+    }
+
+    /**
+     * Command method to list the configured MCP servers with their connection state.
+     */
+    @Command(command = "mcp-servers", interactionMode = InteractionMode.INTERACTIVE, description = "Show the MCP servers and their state")
+    public void showMcpServers() {
+        final PrintWriter writer = terminal.writer();
+        for (McpServerStatus server : mcpServers.status()) {
+            writer.printf("%s (%s): %s, %d tools, %d calls running%s%n", server.name(), server.transport(),
+                    server.connected() ? "connected" : "disconnected", server.tools(), server.activeCalls(),
+                    server.lastError() != null ? ", last error: " + server.lastError() : "");
+        }
+        terminal.flush();
+    }
+
+    /**
+     * Command method to show the hits and misses of the tool result cache, optionally emptying it.
+     * @param clear whether to empty the cache after showing its statistics
+     */
+    @Command(command = "mcp-cache", interactionMode = InteractionMode.INTERACTIVE, description = "Show the tool result cache statistics")
+    public void showToolCache(@Option(longNames = "clear", description = "Empty the cache") final boolean clear) {
+        final PrintWriter writer = terminal.writer();
+        toolResultCache.stats().forEach((name, value) -> writer.println(name + ": " + value));
+        if (clear) {
+            toolResultCache.invalidateAll();
+            writer.println("Cache cleared");
+        }
+        terminal.flush();
+    }
+
+    /**
+     * Command method to show the size of the conversation memory, optionally starting a new conversation.
+     * @param clear whether to forget the conversation after showing its statistics
+     */
+    @Command(command = "mcp-memory", interactionMode = InteractionMode.INTERACTIVE, description = "Show the conversation memory")
+    public void showChatMemory(@Option(longNames = "clear", description = "Forget the conversation") final boolean clear) {
+        final PrintWriter writer = terminal.writer();
+        chatMemory.stats().forEach((name, value) -> writer.println(name + ": " + value));
+        if (clear) {
+            chatMemory.clear(ChatMemory.DEFAULT_CONVERSATION_ID);
+            writer.println("Conversation forgotten");
+        }
+        terminal.flush();
     }
 
     /**
@@ -0,0 +1,24 @@
+package com.mcp.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Conversation memory of the shell session, under {@code mcp.client.memory}.
+ * @param enabled whether earlier questions, answers and tool results are sent with each question
+ * @param maxTokens size of the remembered conversation at most, in estimated tokens
+ * @param largeMessageTokens size from which an older message or tool result is collapsed into a reference
+ * @param keepRecentMessages latest messages that are never summarized; only their large tool results are collapsed
+ * @param summaryWords length asked for the summary of older turns, in words
+ */
+@ConfigurationProperties(prefix = "mcp.client.memory")
+public record ChatMemoryProperties(Boolean enabled, Integer maxTokens, Integer largeMessageTokens,
+                                   Integer keepRecentMessages, Integer summaryWords) {
+
+    public ChatMemoryProperties {
+        enabled = enabled == null || enabled;
+        maxTokens = maxTokens != null && maxTokens > 0 ? maxTokens : 6000;
+        largeMessageTokens = largeMessageTokens != null && largeMessageTokens > 0 ? largeMessageTokens : 1000;
+        keepRecentMessages = keepRecentMessages != null && keepRecentMessages >= 0 ? keepRecentMessages : 6;
+        summaryWords = summaryWords != null && summaryWords > 0 ? summaryWords : 250;
+    }
+}
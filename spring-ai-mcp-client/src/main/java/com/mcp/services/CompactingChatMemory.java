@@ -0,0 +1,396 @@
+package com.mcp.services;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * Chat memory of the shell session, kept within a token budget.
+ * <p>
+ * Besides the questions and answers, the tool calls of each turn and their results are remembered, so the model can
+ * see what it already read instead of calling the tools again. When the conversation grows past
+ * {@code mcp.client.memory.max-tokens}, it is compacted in the background, between questions:
+ * <ol>
+ * <li>older tool results and messages larger than {@code large-message-tokens} are collapsed into a short reference
+ * to the call that produced them, or to their beginning;</li>
+ * <li>if that is not enough, the older turns are replaced by a summary written by the model;</li>
+ * <li>if the summary can't be written, the older turns are dropped;</li>
+ * <li>if the conversation is still too large, the large tool results of the latest turn are collapsed too.</li>
+ * </ol>
+ * Of the latest {@code keep-recent-messages} messages, only large tool results are collapsed, and those of the latest
+ * turn, which the next question most likely follows up on, only as the last step. Reasoning of the model between
+ * {@code <think>} tags is not remembered.
+ */
+@Component
+public class CompactingChatMemory implements ChatMemory {
+
+    private static final Pattern THINKING = Pattern.compile("(?s)<think>.*?</think>\\s*");
+    private static final int EXCERPT_CHARS = 300;
+    private static final int TRANSCRIPT_RESULT_CHARS = 2000;
+
+    private static final class Conversation {
+        List<Message> messages = new ArrayList<>();
+        // Tool calls of the current turn, remembered with its answer
+        final List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        final List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>();
+        CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+    }
+
+    private final boolean enabled;
+    private final int maxTokens;
+    private final int largeMessageTokens;
+    private final int keepRecentMessages;
+    private final int summaryWords;
+    private final ChatClient summarizer;
+    private final TokenCountEstimator tokenCounter = new JTokkitTokenCountEstimator();
+
+    private final Map<String, Conversation> conversations = new HashMap<>();
+    private long toolCallIds;
+    private long collapsed;
+    private long summaries;
+    private long dropped;
+
+    public CompactingChatMemory(ChatMemoryProperties properties, ChatClient.Builder chatClientBuilder) {
+        this.enabled = properties.enabled();
+        this.maxTokens = properties.maxTokens();
+        this.largeMessageTokens = properties.largeMessageTokens();
+        this.keepRecentMessages = properties.keepRecentMessages();
+        this.summaryWords = properties.summaryWords();
+        // A client of its own: no memory and no tools
+        this.summarizer = chatClientBuilder.build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * {@code provider} with the calls of its tools remembered in the default conversation, or itself if the memory is
+     * disabled.
+     */
+    public ToolCallbackProvider recordToolCalls(ToolCallbackProvider provider) {
+        if (!enabled) {
+            return provider;
+        }
+        return () -> Arrays.stream(provider.getToolCallbacks())
+                .map(callback -> (ToolCallback) new Recording(callback))
+                .toArray(ToolCallback[]::new);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Conversation conversation;
+        synchronized (this) {
+            conversation = conversations.computeIfAbsent(conversationId, id -> new Conversation());
+            boolean answered = false;
+            for (Message message : messages) {
+                if (message instanceof UserMessage) {
+                    // Calls left over from an abandoned turn
+                    conversation.toolCalls.clear();
+                    conversation.toolResponses.clear();
+                    conversation.messages.add(message);
+                } else if (message instanceof AssistantMessage assistant) {
+                    if (!conversation.toolCalls.isEmpty()) {
+                        conversation.messages.add(new AssistantMessage("", Map.of(),
+                                List.copyOf(conversation.toolCalls)));
+                        conversation.messages.add(new ToolResponseMessage(List.copyOf(conversation.toolResponses),
+                                Map.of()));
+                        conversation.toolCalls.clear();
+                        conversation.toolResponses.clear();
+                    }
+                    conversation.messages.add(withoutThinking(assistant));
+                    answered = true;
+                } else {
+                    conversation.messages.add(message);
+                }
+            }
+            // Compacted once a turn is answered, while the user types the next question
+            if (!answered || !conversation.compaction.isDone() || tokens(conversation.messages) <= maxTokens) {
+                return;
+            }
+            List<Message> snapshot = List.copyOf(conversation.messages);
+            conversation.compaction = CompletableFuture.runAsync(() -> compact(conversation, snapshot),
+                    runnable -> Thread.ofVirtual().name("chat-memory-compaction").start(runnable));
+        }
+    }
+
+    /**
+     * The remembered conversation, waiting for a compaction in progress.
+     */
+    @Override
+    public List<Message> get(String conversationId) {
+        CompletableFuture<Void> compaction;
+        synchronized (this) {
+            Conversation conversation = conversations.get(conversationId);
+            if (conversation == null) {
+                return List.of();
+            }
+            compaction = conversation.compaction;
+        }
+        compaction.join();
+        synchronized (this) {
+            Conversation conversation = conversations.get(conversationId);
+            return conversation != null ? List.copyOf(conversation.messages) : List.of();
+        }
+    }
+
+    @Override
+    public synchronized void clear(String conversationId) {
+        conversations.remove(conversationId);
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Conversation conversation = conversations.get(ChatMemory.DEFAULT_CONVERSATION_ID);
+        List<Message> messages = conversation != null ? conversation.messages : List.of();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("messages", messages.size());
+        stats.put("tokens", tokens(messages));
+        stats.put("maxTokens", maxTokens);
+        stats.put("collapsed", collapsed);
+        stats.put("summaries", summaries);
+        stats.put("dropped", dropped);
+        return stats;
+    }
+
+    /**
+     * Compact the messages of {@code snapshot}, replacing them in the conversation. Messages added meanwhile are kept
+     * after them.
+     */
+    private void compact(Conversation conversation, List<Message> snapshot) {
+        int recent = recentStart(snapshot);
+        int latestTurn = latestTurnStart(snapshot);
+        List<Message> compacted = new ArrayList<>(snapshot);
+        for (int i = 0; i < recent; i++) {
+            compacted.set(i, collapse(compacted.get(i)));
+        }
+        // Recent questions and answers stay whole, large tool results would keep them over the budget on their own
+        for (int i = recent; i < latestTurn; i++) {
+            if (compacted.get(i) instanceof ToolResponseMessage) {
+                compacted.set(i, collapse(compacted.get(i)));
+            }
+        }
+        // Unless the only older message is the summary of an earlier compaction
+        boolean summarizable = compacted.subList(0, recent).stream().anyMatch(message -> !(message instanceof SystemMessage));
+        if (tokens(compacted) > maxTokens && summarizable) {
+            List<Message> older = compacted.subList(0, recent);
+            String summary = summarize(older);
+            List<Message> kept = new ArrayList<>(compacted.subList(recent, compacted.size()));
+            synchronized (this) {
+                if (summary != null) {
+                    kept.addFirst(new SystemMessage("Summary of the earlier conversation:\n" + summary));
+                    summaries++;
+                } else {
+                    dropped += recent;
+                }
+            }
+            compacted = kept;
+        }
+        if (tokens(compacted) > maxTokens) {
+            compacted.replaceAll(message -> message instanceof ToolResponseMessage ? collapse(message) : message);
+        }
+        synchronized (this) {
+            List<Message> messages = new ArrayList<>(compacted);
+            messages.addAll(conversation.messages.subList(snapshot.size(), conversation.messages.size()));
+            conversation.messages = messages;
+        }
+    }
+
+    /**
+     * Index of the first message left as it is: the user message starting the turn of the oldest recent message, so
+     * that a turn and its tool calls are never split.
+     */
+    private int recentStart(List<Message> messages) {
+        int start = Math.max(0, messages.size() - keepRecentMessages);
+        while (start > 0 && !(messages.get(start) instanceof UserMessage)) {
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * Index of the user message starting the latest turn, or 0.
+     */
+    private static int latestTurnStart(List<Message> messages) {
+        for (int i = messages.size() - 1; i > 0; i--) {
+            if (messages.get(i) instanceof UserMessage) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private Message collapse(Message message) {
+        if (message instanceof ToolResponseMessage toolResponses) {
+            boolean changed = false;
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+            for (ToolResponseMessage.ToolResponse response : toolResponses.getResponses()) {
+                int size = tokens(response.responseData());
+                if (size > largeMessageTokens) {
+                    responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(),
+                            "[Result of " + response.name() + " collapsed, about " + size
+                                    + " tokens. Call the tool again with the same arguments if it is needed.]"));
+                    changed = true;
+                } else {
+                    responses.add(response);
+                }
+            }
+            return changed ? collapsed(new ToolResponseMessage(responses, toolResponses.getMetadata())) : message;
+        }
+        String text = message.getText();
+        int size = tokens(text);
+        if (size <= largeMessageTokens) {
+            return message;
+        }
+        String excerpt = text.substring(0, Math.min(EXCERPT_CHARS, text.length()))
+                + "\n[... rest collapsed, about " + size + " tokens in all]";
+        if (message instanceof UserMessage) {
+            return collapsed(new UserMessage(excerpt));
+        }
+        if (message instanceof AssistantMessage assistant) {
+            return collapsed(new AssistantMessage(excerpt, assistant.getMetadata(), assistant.getToolCalls()));
+        }
+        return message;
+    }
+
+    private synchronized Message collapsed(Message message) {
+        collapsed++;
+        return message;
+    }
+
+    /**
+     * A summary of {@code messages} by the model, or {@code null} if it failed.
+     */
+    private String summarize(List<Message> messages) {
+        StringBuilder transcript = new StringBuilder();
+        for (Message message : messages) {
+            switch (message) {
+                case SystemMessage system -> transcript.append(system.getText());
+                case UserMessage user -> transcript.append("User: ").append(user.getText());
+                case ToolResponseMessage tool -> tool.getResponses().forEach(response -> transcript
+                        .append("Result of ").append(response.name()).append(": ")
+                        .append(abbreviate(response.responseData())).append('\n'));
+                case AssistantMessage assistant when assistant.hasToolCalls() -> assistant.getToolCalls()
+                        .forEach(call -> transcript.append("Assistant called ").append(call.name())
+                                .append(' ').append(call.arguments()).append('\n'));
+                default -> transcript.append("Assistant: ").append(message.getText());
+            }
+            transcript.append('\n');
+        }
+        try {
+            String summary = summarizer.prompt()
+                    .options(OllamaOptions.builder()
+                            .model(McpClientService.MODEL)
+                            .temperature(0.1)
+                            .build())
+                    .user("""
+                            Summarize the following conversation between a user and an assistant using tools, in at \
+                            most %d words. Keep the facts, file paths, decisions and open questions needed to \
+                            continue it. Answer with the summary only.
+
+                            %s""".formatted(summaryWords, transcript))
+                    .call()
+                    .content();
+            summary = summary != null ? THINKING.matcher(summary).replaceAll("").strip() : "";
+            return summary.isEmpty() ? null : summary;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private int tokens(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            if (message instanceof ToolResponseMessage tool) {
+                for (ToolResponseMessage.ToolResponse response : tool.getResponses()) {
+                    total += tokens(response.responseData());
+                }
+            } else if (message instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+                for (AssistantMessage.ToolCall call : assistant.getToolCalls()) {
+                    total += tokens(call.arguments());
+                }
+            } else {
+                total += tokens(message.getText());
+            }
+        }
+        return total;
+    }
+
+    private int tokens(String text) {
+        return StringUtils.hasLength(text) ? tokenCounter.estimate(text) : 0;
+    }
+
+    private static String abbreviate(String text) {
+        return text == null || text.length() <= TRANSCRIPT_RESULT_CHARS ? text
+                : text.substring(0, TRANSCRIPT_RESULT_CHARS) + " [...]";
+    }
+
+    private static AssistantMessage withoutThinking(AssistantMessage message) {
+        String text = message.getText();
+        if (text == null || !text.contains("<think>")) {
+            return message;
+        }
+        return new AssistantMessage(THINKING.matcher(text).replaceAll(""), message.getMetadata(),
+                message.getToolCalls());
+    }
+
+    private synchronized void recordToolCall(String name, String arguments, String result) {
+        Conversation conversation = conversations.computeIfAbsent(ChatMemory.DEFAULT_CONVERSATION_ID,
+                id -> new Conversation());
+        String id = "call_" + ++toolCallIds;
+        conversation.toolCalls.add(new AssistantMessage.ToolCall(id, "function", name, arguments));
+        conversation.toolResponses.add(new ToolResponseMessage.ToolResponse(id, name, result));
+    }
+
+    /**
+     * A tool whose calls are remembered with the turn's answer.
+     */
+    private final class Recording implements ToolCallback {
+
+        private final ToolCallback delegate;
+
+        Recording(ToolCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return delegate.getToolDefinition();
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return call(toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            String result = delegate.call(toolInput, toolContext);
+            recordToolCall(getToolDefinition().name(), toolInput, result);
+            return result;
+        }
+    }
+}
@@ -1,63 +1,57 @@
 package com.mcp.services;
 
-import io.modelcontextprotocol.client.McpClient;
-import io.modelcontextprotocol.client.McpSyncClient;
-import io.modelcontextprotocol.client.transport.ServerParameters;
-import io.modelcontextprotocol.client.transport.StdioClientTransport;
-import io.modelcontextprotocol.spec.McpSchema;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import java.util.stream.Stream;
 
 @Service
 public class McpClientService {
 
-    private final ChatClient chatClient;
+    static final String MODEL = "qwen3:1.7b";
 
-    public McpClientService(ChatClient.Builder chatClientBuilder) {
-        McpSyncClient mcpClient = stdioClient();
-        this.chatClient = chatClientBuilder
-                .defaultToolCallbacks(new SyncMcpToolCallbackProvider(mcpClient))
-                .build();
+    private final ChatClient chatClient;
+    private final ToolCallbackProvider tools;
+
+    public McpClientService(ChatClient.Builder chatClientBuilder, McpServerRegistry mcpServers,
+                            ToolResultCache toolResultCache, CompactingChatMemory chatMemory) {
+        if (chatMemory.isEnabled()) {
+            // Earlier turns of the session, within the memory's token budget
+            chatClientBuilder.defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build());
+        }
+        this.chatClient = chatClientBuilder.build();
+        this.tools = chatMemory.recordToolCalls(toolResultCache.decorate(mcpServers.toolCallbackProvider()));
     }
 
     public Stream<String> getResponse(String question) {
+        return getResponse(question, new TokenTimings());
+    }
+
+    /**
+     * The answer's tokens as the model generates them. Nothing is sent until the stream is consumed, and closing it
+     * early cancels the generation. {@code timings} records the latency of the tokens as they arrive.
+     */
+    public Stream<String> getResponse(String question, TokenTimings timings) {
         OllamaOptions options = OllamaOptions.builder()
-                .model("qwen3:1.7b")
+                .model(MODEL)
                 .temperature(0.1)
                 .build();
 
-        System.out.println("Preparing the answer...");
-
-        String response = chatClient.prompt()
+        return chatClient.prompt()
                 .options(options)
                 .user(question)
-                .call()
-                .content();
-
-        System.out.println("reponse : " + response);
-
-        return Stream.of(response);
-    }
-
-    public McpSyncClient stdioClient() {
-        var stdioParams = ServerParameters.builder("java")
-                .args("-Dspring.ai.mcp.server.stdio=true", "-Dspring.main.web-application-type=none",
-                        "-Dlogging.pattern.console=", "-jar",
-                        "C://Users//B661LP//git//mcp-server-spring-workshop//spring-ai-mcp-server//target//spring-ai-mcp-server-0.0.1.jar")
-                .build();
-
-        var transport = new StdioClientTransport(stdioParams);
-        var client = McpClient.sync(transport).build();
-
-        client.initialize();
-
-        // List and demonstrate tools
-        McpSchema.ListToolsResult toolsList = client.listTools();
-        System.out.println("Available Tools = " + toolsList);
-        return client;
+                // Resolved for each question, with the tools of the servers reachable now
+                .toolCallbacks(tools.getToolCallbacks())
+                .stream()
+                .content()
+                .filter(StringUtils::hasLength)
+                .doOnSubscribe(subscription -> timings.start())
+                .doOnNext(token -> timings.token())
+                .doFinally(signal -> timings.end())
+                .toStream();
     }
 }
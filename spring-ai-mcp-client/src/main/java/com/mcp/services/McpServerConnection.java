@@ -0,0 +1,206 @@
+package com.mcp.services;
+
+import io.modelcontextprotocol.client.McpAsyncClient;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.spec.McpClientTransport;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * A configured MCP server and its client, connected on first use and again after it failed. Calls are limited to the
+ * server's {@code maxConcurrentCalls}; a call that fails for any reason but an error reply of the server or a timeout
+ * drops the connection, which is then re-established by the next call.
+ * <p>
+ * The client is asynchronous, so calls from several threads are all in flight on the transport at once, matched to
+ * their responses by request id, instead of each waiting for the previous one. Callers still block, with the request
+ * timeout, until their own response arrives.
+ */
+class McpServerConnection implements AutoCloseable {
+
+    private final String name;
+    private final McpServersProperties.Server server;
+    private final Duration requestTimeout;
+    private final long reconnectDelayNanos;
+    private final Semaphore calls;
+
+    // Written under the lock, read without it
+    private volatile McpAsyncClient client;
+    private volatile List<McpSchema.Tool> tools = List.of();
+    private volatile String lastError;
+    private boolean attempted;
+    private long nextAttemptNanos;
+    private boolean closed;
+
+    McpServerConnection(String name, McpServersProperties.Server server, Duration requestTimeout,
+                        Duration reconnectDelay) {
+        this.name = name;
+        this.server = server;
+        this.requestTimeout = requestTimeout;
+        this.reconnectDelayNanos = reconnectDelay.toNanos();
+        this.calls = new Semaphore(server.maxConcurrentCalls(), true);
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Tools of the server when it was connected, empty if it never was.
+     */
+    List<McpSchema.Tool> tools() {
+        return tools;
+    }
+
+    /**
+     * The connected client, connecting it unless the last attempt failed less than the reconnect delay ago. Returns
+     * {@code null} if the server can't be reached.
+     */
+    synchronized McpAsyncClient connect() {
+        if (client != null || closed) {
+            return client;
+        }
+        if (attempted && System.nanoTime() - nextAttemptNanos < 0) {
+            return null;
+        }
+        attempted = true;
+        McpAsyncClient connecting = null;
+        try {
+            connecting = McpClient.async(transport())
+                    .requestTimeout(requestTimeout)
+                    .initializationTimeout(requestTimeout)
+                    .build();
+            connecting.initialize().block();
+            tools = listTools(connecting);
+            lastError = null;
+            client = connecting;
+        } catch (RuntimeException e) {
+            if (connecting != null) {
+                connecting.close();
+            }
+            lastError = message(e);
+            nextAttemptNanos = System.nanoTime() + reconnectDelayNanos;
+        }
+        return client;
+    }
+
+    /**
+     * Send a request to the server, waiting for a free call slot at most the request timeout.
+     */
+    <T> T call(Function<McpAsyncClient, Mono<T>> request) {
+        try {
+            if (!calls.tryAcquire(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("MCP server " + name + " is busy, "
+                        + server.maxConcurrentCalls() + " calls already running");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for MCP server " + name);
+        }
+        try {
+            McpAsyncClient current = connect();
+            if (current == null) {
+                throw new IllegalStateException("MCP server " + name + " is unavailable: " + lastError);
+            }
+            try {
+                return request.apply(current).block();
+            } catch (McpError e) {
+                // The server answered, the connection is fine
+                throw e;
+            } catch (RuntimeException e) {
+                // A slow tool is not a broken connection, the health check tells those apart
+                if (!(Exceptions.unwrap(e) instanceof TimeoutException)) {
+                    disconnect(current, e);
+                }
+                throw e;
+            }
+        } finally {
+            calls.release();
+        }
+    }
+
+    /**
+     * Ping the server if it is connected, dropping the connection if it doesn't answer.
+     */
+    void checkHealth() {
+        McpAsyncClient current = client;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.ping().block();
+        } catch (RuntimeException e) {
+            disconnect(current, e);
+        }
+    }
+
+    McpServerStatus status() {
+        return new McpServerStatus(name, server.transport().name().toLowerCase(Locale.ROOT), client != null,
+                tools.size(), server.maxConcurrentCalls() - calls.availablePermits(), lastError);
+    }
+
+    private synchronized void disconnect(McpAsyncClient broken, RuntimeException cause) {
+        if (client != broken) {
+            // Already replaced
+            return;
+        }
+        client = null;
+        lastError = message(cause);
+        // The next use reconnects right away
+        nextAttemptNanos = System.nanoTime();
+        broken.close();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (client != null) {
+            client.closeGracefully().block(requestTimeout);
+            client = null;
+        }
+    }
+
+    private McpClientTransport transport() {
+        return switch (server.transport()) {
+            case STDIO -> new StdioClientTransport(ServerParameters.builder(server.command())
+                    .args(server.args())
+                    .env(server.env())
+                    .build());
+            case SSE -> HttpClientSseClientTransport.builder(server.url())
+                    .sseEndpoint(server.sseEndpoint())
+                    .build();
+        };
+    }
+
+    private static List<McpSchema.Tool> listTools(McpAsyncClient client) {
+        List<McpSchema.Tool> all = new ArrayList<>();
+        String cursor = null;
+        do {
+            McpSchema.ListToolsResult page = client.listTools(cursor).block();
+            all.addAll(page.tools());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return List.copyOf(all);
+    }
+
+    private static String message(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+}
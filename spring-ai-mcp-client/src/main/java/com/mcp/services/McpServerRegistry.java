@@ -0,0 +1,96 @@
+package com.mcp.services;
+
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MCP servers configured under {@code mcp.client.servers}, offering the tools of all of them.
+ * <p>
+ * Servers are connected in parallel in the background at startup, so the shell doesn't wait for them. Connected
+ * servers are pinged every {@code health-check-interval} and dropped when they don't answer; a dropped or unreachable
+ * server is reconnected by the next request that needs it. Tools offered by more than one server are prefixed with
+ * the server name.
+ * <p>
+ * The registry is not itself a {@link ToolCallbackProvider} bean: Spring AI collects those when it starts, which would
+ * wait for the servers and keep their tools as they were then.
+ */
+@Component
+public class McpServerRegistry implements AutoCloseable {
+
+    private static final Executor CONNECTOR = runnable -> Thread.ofVirtual().name("mcp-connect").start(runnable);
+
+    private final Map<String, McpServerConnection> connections = new LinkedHashMap<>();
+    private final ScheduledExecutorService healthChecks;
+
+    public McpServerRegistry(McpServersProperties properties) {
+        properties.servers().forEach((name, server) -> connections.put(name,
+                new McpServerConnection(name, server, properties.requestTimeout(), properties.reconnectDelay())));
+
+        CONNECTOR.execute(this::connectAll);
+
+        long interval = properties.healthCheckInterval().toMillis();
+        healthChecks = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("mcp-health-check").factory());
+        healthChecks.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Provider of the tools of all reachable servers at the time it is asked.
+     */
+    public ToolCallbackProvider toolCallbackProvider() {
+        return this::toolCallbacks;
+    }
+
+    /**
+     * Tools of all reachable servers, waiting for servers being connected.
+     */
+    public ToolCallback[] toolCallbacks() {
+        connectAll();
+
+        Map<String, Integer> offeredBy = new HashMap<>();
+        for (McpServerConnection connection : connections.values()) {
+            connection.tools().forEach(tool -> offeredBy.merge(tool.name(), 1, Integer::sum));
+        }
+        List<ToolCallback> callbacks = new ArrayList<>();
+        for (McpServerConnection connection : connections.values()) {
+            if (connection.status().connected()) {
+                connection.tools().forEach(tool -> callbacks.add(new McpServerToolCallback(connection, tool,
+                        offeredBy.get(tool.name()) > 1 ? connection.name() + "_" + tool.name() : tool.name())));
+            }
+        }
+        return callbacks.toArray(ToolCallback[]::new);
+    }
+
+    public List<McpServerStatus> status() {
+        return connections.values().stream().map(McpServerConnection::status).toList();
+    }
+
+    /**
+     * Connect the servers that aren't, in parallel.
+     */
+    private void connectAll() {
+        CompletableFuture.allOf(connections.values().stream()
+                .map(connection -> CompletableFuture.runAsync(connection::connect, CONNECTOR))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void checkHealth() {
+        CompletableFuture.allOf(connections.values().stream()
+                .map(connection -> CompletableFuture.runAsync(connection::checkHealth, CONNECTOR))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    @Override
+    public void close() {
+        healthChecks.shutdownNow();
+        connections.values().forEach(McpServerConnection::close);
+    }
+}
@@ -0,0 +1,14 @@
+package com.mcp.services;
+
+/**
+ * State of a configured MCP server.
+ * @param name its name in the configuration
+ * @param transport stdio or sse
+ * @param connected whether the client is currently connected
+ * @param tools number of tools it offers, as of its last connection
+ * @param activeCalls tool calls currently running
+ * @param lastError why it last failed to connect or was disconnected, {@code null} if it never did
+ */
+public record McpServerStatus(String name, String transport, boolean connected, int tools, int activeCalls,
+                              String lastError) {
+}
@@ -0,0 +1,80 @@
+package com.mcp.services;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.Map;
+
+/**
+ * A tool of an MCP server, called through its {@link McpServerConnection} so that it goes to whichever client is
+ * currently connected and counts against the server's concurrency limit.
+ * <p>
+ * The tool's own name on its server travels in its {@link ToolMetadata}, which callback decorators pass on, so that
+ * configuration listing tools by name still applies when the model sees it renamed (see {@link #serverToolName}).
+ */
+class McpServerToolCallback implements ToolCallback {
+
+    /**
+     * Metadata of an MCP server tool: its name on the server.
+     */
+    record ServerToolMetadata(String serverToolName) implements ToolMetadata {
+    }
+
+    private final McpServerConnection connection;
+    private final McpSchema.Tool tool;
+    private final ToolDefinition definition;
+    private final ToolMetadata metadata;
+
+    /**
+     * @param exposedName name the model sees, which differs from the tool's when several servers offer the same one
+     */
+    McpServerToolCallback(McpServerConnection connection, McpSchema.Tool tool, String exposedName) {
+        this.connection = connection;
+        this.tool = tool;
+        this.definition = ToolDefinition.builder()
+                .name(exposedName)
+                .description(tool.description())
+                .inputSchema(ModelOptionsUtils.toJsonString(tool.inputSchema()))
+                .build();
+        this.metadata = new ServerToolMetadata(tool.name());
+    }
+
+    /**
+     * The name of the tool behind {@code callback} on its MCP server, or the name the model sees for other tools.
+     */
+    static String serverToolName(ToolCallback callback) {
+        return callback.getToolMetadata() instanceof ServerToolMetadata metadata
+                ? metadata.serverToolName()
+                : callback.getToolDefinition().name();
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return definition;
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public String call(String toolInput) {
+        Map<String, Object> arguments = ModelOptionsUtils.jsonToMap(toolInput);
+        McpSchema.CallToolResult result;
+        try {
+            result = connection.call(client -> client.callTool(new McpSchema.CallToolRequest(tool.name(), arguments)));
+        } catch (RuntimeException e) {
+            throw new ToolExecutionException(definition, e);
+        }
+        if (Boolean.TRUE.equals(result.isError())) {
+            throw new ToolExecutionException(definition,
+                    new IllegalStateException("Error calling tool: " + result.content()));
+        }
+        return ModelOptionsUtils.toJsonString(result.content());
+    }
+}
@@ -0,0 +1,56 @@
+package com.mcp.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MCP servers the client connects to, under {@code mcp.client}, by name.
+ * @param requestTimeout timeout of the initialization and of each request to a server
+ * @param healthCheckInterval how often connected servers are pinged
+ * @param reconnectDelay how long a server that failed to connect is left alone before the next attempt
+ * @param servers the servers by name
+ */
+@ConfigurationProperties(prefix = "mcp.client")
+public record McpServersProperties(Duration requestTimeout, Duration healthCheckInterval, Duration reconnectDelay,
+                                   Map<String, Server> servers) {
+
+    public McpServersProperties {
+        requestTimeout = requestTimeout != null ? requestTimeout : Duration.ofSeconds(30);
+        healthCheckInterval = healthCheckInterval != null ? healthCheckInterval : Duration.ofSeconds(30);
+        reconnectDelay = reconnectDelay != null ? reconnectDelay : Duration.ofSeconds(30);
+        servers = servers != null ? servers : Map.of();
+    }
+
+    public enum Transport { STDIO, SSE }
+
+    /**
+     * One server: a command started by the client ({@code stdio}) or an HTTP endpoint ({@code sse}).
+     * @param transport how to reach the server, {@code stdio} by default
+     * @param command the command starting a stdio server
+     * @param args its arguments
+     * @param env its additional environment variables
+     * @param url base URL of an SSE server
+     * @param sseEndpoint path of its SSE endpoint, {@code /sse} by default
+     * @param maxConcurrentCalls tool calls sent to the server at the same time at most, 4 by default
+     */
+    public record Server(Transport transport, String command, List<String> args, Map<String, String> env, String url,
+                         String sseEndpoint, Integer maxConcurrentCalls) {
+
+        public Server {
+            transport = transport != null ? transport : Transport.STDIO;
+            args = args != null ? args : List.of();
+            env = env != null ? env : Map.of();
+            sseEndpoint = sseEndpoint != null ? sseEndpoint : "/sse";
+            maxConcurrentCalls = maxConcurrentCalls != null && maxConcurrentCalls > 0 ? maxConcurrentCalls : 4;
+            if (transport == Transport.STDIO && (command == null || command.isBlank())) {
+                throw new IllegalArgumentException("A stdio MCP server needs a command");
+            }
+            if (transport == Transport.SSE && (url == null || url.isBlank())) {
+                throw new IllegalArgumentException("An SSE MCP server needs a url");
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.mcp.services;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.DefaultToolCallingManager;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the tool calls the model asks for in one turn at the same time, each on its own virtual thread, so that a turn
+ * takes as long as its slowest call rather than their sum. The MCP connections send concurrent calls without waiting
+ * for each other. Results are returned in the order of the calls, as Spring AI's sequential manager does, which still
+ * handles turns with a single call and the resolution of tool definitions.
+ * <p>
+ * Only read-only calls overlap. A call to a tool that changes state, one of {@code mcp.client.tool-cache.invalidating},
+ * starts once the calls before it are done and runs alone, so that "write A, then read A" reads the new content and
+ * edits are applied in the order they were asked for.
+ * <p>
+ * Replaces the default manager unless {@code mcp.client.parallel-tool-calls} is false.
+ */
+@Component
+@ConditionalOnProperty(prefix = "mcp.client", name = "parallel-tool-calls", havingValue = "true", matchIfMissing = true)
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager sequential;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ToolExecutionExceptionProcessor toolExecutionExceptionProcessor;
+    private final Set<String> stateChangingTools;
+
+    public ParallelToolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                      ObjectProvider<ObservationRegistry> observationRegistry,
+                                      ToolCacheProperties toolCacheProperties) {
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.toolExecutionExceptionProcessor = toolExecutionExceptionProcessor;
+        this.stateChangingTools = Set.copyOf(toolCacheProperties.invalidating());
+        this.sequential = DefaultToolCallingManager.builder()
+                .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
+                .toolCallbackResolver(toolCallbackResolver)
+                .toolExecutionExceptionProcessor(toolExecutionExceptionProcessor)
+                .build();
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return sequential.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        if (toolCalls.size() < 2) {
+            return sequential.executeToolCalls(prompt, chatResponse);
+        }
+
+        List<ToolCallback> toolCallbacks = prompt.getOptions() instanceof ToolCallingChatOptions options
+                ? options.getToolCallbacks() : List.of();
+        // Resolved up front, so an unknown tool fails the turn before any call runs
+        List<ToolCallback> callbacks = new ArrayList<>();
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback callback = toolCallbacks.stream()
+                    .filter(tool -> toolCall.name().equals(tool.getToolDefinition().name()))
+                    .findFirst()
+                    .orElseGet(() -> toolCallbackResolver.resolve(toolCall.name()));
+            if (callback == null) {
+                throw new IllegalStateException("No ToolCallback found for tool name: " + toolCall.name());
+            }
+            callbacks.add(callback);
+            returnDirect &= callback.getToolMetadata().returnDirect();
+        }
+
+        ToolContext toolContext = toolContext(prompt, assistantMessage);
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < toolCalls.size(); i++) {
+                ToolCallback callback = callbacks.get(i);
+                String arguments = StringUtils.hasText(toolCalls.get(i).arguments())
+                        ? toolCalls.get(i).arguments() : "{}";
+                boolean changesState = stateChangingTools.contains(McpServerToolCallback.serverToolName(callback));
+                if (changesState) {
+                    // After the calls before it, which also stops the turn here if one of them failed
+                    results.forEach(ParallelToolCallingManager::result);
+                }
+                Future<String> called = executor.submit(() -> call(callback, arguments, toolContext));
+                results.add(called);
+                if (changesState) {
+                    result(called);
+                }
+            }
+            for (int i = 0; i < toolCalls.size(); i++) {
+                AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+                responses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                        result(results.get(i))));
+            }
+        }
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.copy().getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private String call(ToolCallback callback, String arguments, ToolContext toolContext) {
+        try {
+            return callback.call(arguments, toolContext);
+        } catch (ToolExecutionException e) {
+            return toolExecutionExceptionProcessor.process(e);
+        }
+    }
+
+    private static String result(Future<String> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tool calls", e);
+        } catch (ExecutionException e) {
+            // Failures other than tool errors end the turn, as with a sequential call
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * The tool context of the prompt options, with the conversation so far, as the sequential manager builds it.
+     */
+    private static ToolContext toolContext(Prompt prompt, AssistantMessage assistantMessage) {
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options
+                && options.getToolContext() != null && !options.getToolContext().isEmpty()) {
+            Map<String, Object> context = new HashMap<>(options.getToolContext());
+            List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+            history.add(assistantMessage);
+            context.put(ToolContext.TOOL_CALL_HISTORY, history);
+            return new ToolContext(context);
+        }
+        return new ToolContext(Map.of());
+    }
+}
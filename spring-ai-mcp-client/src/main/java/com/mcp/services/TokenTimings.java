@@ -0,0 +1,97 @@
+package com.mcp.services;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latency of a streamed answer: the time to its first token and the gaps between the following ones. A token is one
+ * chunk of the model's stream, which for Ollama is usually a single token.
+ */
+public class TokenTimings {
+
+    private long startNanos;
+    private long lastTokenNanos;
+    private long firstTokenNanos = -1;
+    private long endNanos = -1;
+    private int tokens;
+    private long[] gapsNanos = new long[256];
+
+    /**
+     * The request was sent.
+     */
+    public synchronized void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public synchronized void token() {
+        long now = System.nanoTime();
+        if (tokens == 0) {
+            firstTokenNanos = now;
+        } else {
+            if (tokens - 1 == gapsNanos.length) {
+                gapsNanos = Arrays.copyOf(gapsNanos, gapsNanos.length * 2);
+            }
+            gapsNanos[tokens - 1] = now - lastTokenNanos;
+        }
+        lastTokenNanos = now;
+        tokens++;
+    }
+
+    /**
+     * The answer is complete, or failed, or was abandoned.
+     */
+    public synchronized void end() {
+        if (endNanos < 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public synchronized int tokenCount() {
+        return tokens;
+    }
+
+    /**
+     * Milliseconds from the request to the first token, -1 if none came.
+     */
+    public synchronized long timeToFirstTokenMillis() {
+        return firstTokenNanos < 0 ? -1 : (firstTokenNanos - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Milliseconds between consecutive tokens at the given percentile (0 to 100), -1 with fewer than two tokens.
+     */
+    public synchronized double interTokenMillis(double percentile) {
+        if (tokens < 2) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(gapsNanos, tokens - 1);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.clamp(rank, 0, sorted.length - 1)] / 1e6;
+    }
+
+    /**
+     * Generation speed after the first token, 0 with fewer than two tokens.
+     */
+    public synchronized double tokensPerSecond() {
+        return tokens < 2 ? 0 : (tokens - 1) * 1e9 / (lastTokenNanos - firstTokenNanos);
+    }
+
+    public synchronized long totalMillis() {
+        return ((endNanos < 0 ? System.nanoTime() : endNanos) - startNanos) / 1_000_000;
+    }
+
+    public synchronized String summary() {
+        if (tokens == 0) {
+            return String.format(Locale.ROOT, "No tokens received, %d ms", totalMillis());
+        }
+        if (tokens == 1) {
+            return String.format(Locale.ROOT, "First token after %d ms, 1 token, %d ms total",
+                    timeToFirstTokenMillis(), totalMillis());
+        }
+        return String.format(Locale.ROOT,
+                "First token after %d ms, %d tokens at %.1f tokens/s, between tokens p50 %.1f ms p95 %.1f ms max %.1f ms, %d ms total",
+                timeToFirstTokenMillis(), tokens, tokensPerSecond(), interTokenMillis(50), interTokenMillis(95),
+                interTokenMillis(100), totalMillis());
+    }
+}
@@ -0,0 +1,28 @@
+package com.mcp.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of tool results in the client, under {@code mcp.client.tool-cache}.
+ * @param enabled whether results are cached
+ * @param maxBytes total size of the cached results at most, in UTF-8 bytes
+ * @param ttl how long the result of each cached tool is kept, by the tool's name on its server; other tools are not
+ *            cached
+ * @param invalidating tools, by name on their server, that change files or server state, whose calls empty the cache
+ *                     and are run in order rather than concurrently
+ */
+@ConfigurationProperties(prefix = "mcp.client.tool-cache")
+public record ToolCacheProperties(Boolean enabled, Long maxBytes, Map<String, Duration> ttl,
+                                  List<String> invalidating) {
+
+    public ToolCacheProperties {
+        enabled = enabled == null || enabled;
+        maxBytes = maxBytes != null && maxBytes > 0 ? maxBytes : 8L * 1024 * 1024;
+        ttl = ttl != null ? ttl : Map.of();
+        invalidating = invalidating != null ? invalidating : List.of();
+    }
+}
@@ -0,0 +1,313 @@
+package com.mcp.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Results of read-only tools, by tool name and arguments, so that the model asking again for the same file or listing
+ * within a session doesn't cost another call to the server.
+ * <p>
+ * Only the tools given a TTL under {@code mcp.client.tool-cache.ttl} are cached. Calls to the invalidating tools empty
+ * the cache, before and after they run; a result computed while one was running is not stored. The least recently used
+ * results are evicted once their total size exceeds {@code max-bytes}. Failed calls are not cached, whether they end
+ * in an MCP error or, as the workshop server's tools report failures, in a result with {@code "success": false}.
+ */
+@Component
+public class ToolResultCache {
+
+    // Arguments as canonical JSON, so that the order of the keys doesn't matter
+    private static final ObjectMapper CANONICAL = new ObjectMapper()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    private static final String SUCCESS = "success";
+
+    private record Key(String tool, String arguments) {
+    }
+
+    private record Entry(String result, long bytes, long expiresNanos) {
+    }
+
+    private record ToolCounts(long hits, long misses) {
+    }
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final Map<String, Long> ttlNanos = new HashMap<>();
+    private final Set<String> invalidating;
+
+    // Least recently used first
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, ToolCounts> counts = new TreeMap<>();
+    private long bytes;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ToolResultCache(ToolCacheProperties properties) {
+        this.enabled = properties.enabled();
+        this.maxBytes = properties.maxBytes();
+        properties.ttl().forEach((tool, ttl) -> ttlNanos.put(tool, ttl.toNanos()));
+        this.invalidating = Set.copyOf(properties.invalidating());
+    }
+
+    /**
+     * {@code provider} with its tools going through the cache, or itself if the cache is disabled.
+     */
+    public ToolCallbackProvider decorate(ToolCallbackProvider provider) {
+        if (!enabled) {
+            return provider;
+        }
+        return () -> Arrays.stream(provider.getToolCallbacks())
+                .map(this::decorate)
+                .toArray(ToolCallback[]::new);
+    }
+
+    private ToolCallback decorate(ToolCallback callback) {
+        // Configured by the name on the server, also when the model sees it prefixed with the server's
+        String tool = McpServerToolCallback.serverToolName(callback);
+        if (ttlNanos.containsKey(tool)) {
+            return new Caching(callback, ttlNanos.get(tool));
+        }
+        if (invalidating.contains(tool)) {
+            return new Invalidating(callback);
+        }
+        return callback;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        Map<String, String> byTool = new LinkedHashMap<>();
+        counts.forEach((tool, count) -> byTool.put(tool, count.hits() + " hits, " + count.misses() + " misses"));
+        stats.put("tools", byTool);
+        return stats;
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        if (!entries.isEmpty()) {
+            invalidations++;
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    private synchronized Entry lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.expiresNanos() >= 0) {
+            entries.remove(key);
+            bytes -= entry.bytes();
+            entry = null;
+        }
+        count(key.tool(), entry != null);
+        return entry;
+    }
+
+    private synchronized void store(Key key, String result, long ttl, long startGeneration) {
+        if (generation != startGeneration) {
+            // Files may have changed while the tool ran
+            return;
+        }
+        long size = result.getBytes(StandardCharsets.UTF_8).length;
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(result, size, System.nanoTime() + ttl));
+        bytes += size - (previous != null ? previous.bytes() : 0);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private void count(String tool, boolean hit) {
+        ToolCounts current = counts.getOrDefault(tool, new ToolCounts(0, 0));
+        if (hit) {
+            hits++;
+            counts.put(tool, new ToolCounts(current.hits() + 1, current.misses()));
+        } else {
+            misses++;
+            counts.put(tool, new ToolCounts(current.hits(), current.misses() + 1));
+        }
+    }
+
+    /**
+     * Whether {@code result}, the JSON content list of a tool result or a single object, carries
+     * {@code "success": false}, such as a file that doesn't exist or a transient I/O error.
+     */
+    static boolean reportsFailure(String result) {
+        // Streamed, a large result is not turned into a tree just to look for one field
+        try (JsonParser parser = CANONICAL.getFactory().createParser(result)) {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_OBJECT) {
+                return objectReportsFailure(parser);
+            }
+            if (first != JsonToken.START_ARRAY) {
+                return false;
+            }
+            for (JsonToken content = parser.nextToken(); content != null && content != JsonToken.END_ARRAY;
+                 content = parser.nextToken()) {
+                if (content != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("text".equals(name) && value == JsonToken.VALUE_STRING && textReportsFailure(parser.getText())) {
+                        return true;
+                    }
+                    parser.skipChildren();
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean textReportsFailure(String text) {
+        try (JsonParser parser = CANONICAL.getFactory().createParser(text)) {
+            return parser.nextToken() == JsonToken.START_OBJECT && objectReportsFailure(parser);
+        } catch (IOException e) {
+            // Not JSON, a plain text result
+            return false;
+        }
+    }
+
+    /**
+     * Whether the object whose start {@code parser} just read has {@code "success": false} among its fields.
+     */
+    private static boolean objectReportsFailure(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (SUCCESS.equals(name)) {
+                return value == JsonToken.VALUE_FALSE;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static String canonical(String arguments) {
+        if (arguments == null || arguments.isBlank()) {
+            return "{}";
+        }
+        try {
+            return CANONICAL.writeValueAsString(CANONICAL.readValue(arguments, Object.class));
+        } catch (JsonProcessingException e) {
+            return arguments;
+        }
+    }
+
+    /**
+     * A tool whose results are cached.
+     */
+    private final class Caching implements ToolCallback {
+
+        private final ToolCallback delegate;
+        private final long ttl;
+
+        Caching(ToolCallback delegate, long ttl) {
+            this.delegate = delegate;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return delegate.getToolDefinition();
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return call(toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            Key key = new Key(getToolDefinition().name(), canonical(toolInput));
+            Entry cached = lookup(key);
+            if (cached != null) {
+                return cached.result();
+            }
+            long startGeneration = generation();
+            String result = delegate.call(toolInput, toolContext);
+            if (result != null && !reportsFailure(result)) {
+                store(key, result, ttl, startGeneration);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A tool that may change files, emptying the cache.
+     */
+    private final class Invalidating implements ToolCallback {
+
+        private final ToolCallback delegate;
+
+        Invalidating(ToolCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return delegate.getToolDefinition();
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return call(toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            invalidateAll();
+            try {
+                return delegate.call(toolInput, toolContext);
+            } finally {
+                invalidateAll();
+            }
+        }
+    }
+}
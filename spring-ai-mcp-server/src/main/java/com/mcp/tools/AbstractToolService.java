@@ -1,33 +1,49 @@
 package com.mcp.tools;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
 import java.util.Map;
 
 public class AbstractToolService {
 
     protected static final String SUCCESS = "success";
     protected static final String ERROR = "error";
-    protected final ObjectMapper mapper = new ObjectMapper();
+    private static final String SERIALIZATION_ERROR = "{\"success\": false, \"error\": \"Failed to serialize result\"}";
+
+    // Thread-safe once configured, shared by all tools; results are written field by field, so no flush per value
+    protected static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    protected final ObjectMapper mapper = MAPPER;
 
     protected String errorMessage(String errorMessage) {
-        return createJsonMessage(false, errorMessage);
+        return writeResult(writer -> writer.field(SUCCESS, false).field(ERROR, errorMessage));
     }
 
     protected String successMessage(Map<String, Object> result) {
         result.put(SUCCESS, true);
-        return serializeResult(result);
+        return writeResult(writer -> writer.fields(result));
     }
 
-    private String createJsonMessage(boolean success, String message) {
-        Map<String, Object> result = Map.of(SUCCESS, success, ERROR, message);
-        return serializeResult(result);
+    /**
+     * A successful result whose other fields are written by {@code body}, without building a map first. Large content
+     * should be given as a {@link java.io.Reader} so it is copied from its source straight into the result; failures
+     * reading it are thrown, for the tool to report as its own errors.
+     */
+    protected String successResult(ResultWriter.Body body) throws IOException {
+        return ResultWriter.write(mapper, writer -> {
+            writer.field(SUCCESS, true);
+            body.write(writer);
+        });
     }
 
-    private String serializeResult(Map<String, Object> result) {
+    private String writeResult(ResultWriter.Body body) {
         try {
-            return mapper.writeValueAsString(result);
+            return ResultWriter.write(mapper, body);
         } catch (Exception ex) {
-            return "{\"success\": false, \"error\": \"Failed to serialize result\"}";
+            return SERIALIZATION_ERROR;
         }
     }
 }
@@ -0,0 +1,156 @@
+package com.mcp.tools;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes a tool result as a JSON object, field by field, straight into a per-thread buffer that is reused across
+ * calls. Large values can be written from a {@link Reader}, so their text goes from the source to the output without
+ * an intermediate {@link String}.
+ */
+public final class ResultWriter {
+
+    // Buffers that grew past this are dropped after use instead of being kept by the thread
+    private static final int MAX_RETAINED_CHARS = 1024 * 1024;
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    /**
+     * Writes the fields of a result.
+     */
+    @FunctionalInterface
+    public interface Body {
+        void write(ResultWriter writer) throws IOException;
+    }
+
+    private final ObjectMapper mapper;
+    private final JsonGenerator generator;
+
+    private ResultWriter(ObjectMapper mapper, JsonGenerator generator) {
+        this.mapper = mapper;
+        this.generator = generator;
+    }
+
+    /**
+     * The JSON object written by {@code body}.
+     */
+    static String write(ObjectMapper mapper, Body body) throws IOException {
+        Buffer buffer = BUFFERS.get();
+        if (buffer.inUse) {
+            // A result written while writing another one, on the same thread
+            buffer = new Buffer();
+        }
+        buffer.inUse = true;
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+            body.write(new ResultWriter(mapper, generator));
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.text.toString();
+        } finally {
+            buffer.inUse = false;
+            if (buffer.text.capacity() > MAX_RETAINED_CHARS) {
+                BUFFERS.remove();
+            } else {
+                buffer.text.setLength(0);
+            }
+        }
+    }
+
+    public ResultWriter field(String name, String value) throws IOException {
+        generator.writeStringField(name, value);
+        return this;
+    }
+
+    public ResultWriter field(String name, long value) throws IOException {
+        generator.writeNumberField(name, value);
+        return this;
+    }
+
+    public ResultWriter field(String name, boolean value) throws IOException {
+        generator.writeBooleanField(name, value);
+        return this;
+    }
+
+    /**
+     * A field with any value the mapper can serialize: collections, maps, records...
+     */
+    public ResultWriter field(String name, Object value) throws IOException {
+        generator.writeFieldName(name);
+        mapper.writeValue(generator, value);
+        return this;
+    }
+
+    /**
+     * A string field whose text is read from {@code content} until its end.
+     */
+    public ResultWriter field(String name, Reader content) throws IOException {
+        generator.writeFieldName(name);
+        generator.writeString(content, -1);
+        return this;
+    }
+
+    /**
+     * All entries of {@code fields}, as by {@link #field(String, Object)}.
+     */
+    public ResultWriter fields(Map<String, ?> fields) throws IOException {
+        for (Map.Entry<String, ?> entry : fields.entrySet()) {
+            field(entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Start an array field, whose elements are then written with {@link #element(String)}.
+     */
+    public ResultWriter startArray(String name) throws IOException {
+        generator.writeArrayFieldStart(name);
+        return this;
+    }
+
+    public ResultWriter element(String value) throws IOException {
+        generator.writeString(value);
+        return this;
+    }
+
+    public ResultWriter endArray() throws IOException {
+        generator.writeEndArray();
+        return this;
+    }
+
+    /**
+     * Unsynchronized {@link Writer} into a reusable builder.
+     */
+    private static final class Buffer extends Writer {
+
+        private final StringBuilder text = new StringBuilder(8192);
+        private boolean inUse;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            text.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            text.append(string, offset, offset + length);
+        }
+
+        @Override
+        public void write(int c) {
+            text.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
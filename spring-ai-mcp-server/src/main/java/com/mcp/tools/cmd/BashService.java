@@ -1,43 +1,271 @@
 package com.mcp.tools.cmd;
 
 import com.mcp.tools.AbstractToolService;
+import com.mcp.tools.fs.FileSystemCache;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.McpToolUtils;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class BashService extends AbstractToolService {
 
     private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int MAX_OUTPUT_HEAD_BYTES = 64 * 1024;
+    private static final int MAX_OUTPUT_TAIL_BYTES = 64 * 1024;
+    private static final long OUTPUT_GRACE_MILLIS = 1000;
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_MAX_OUTPUT_BYTES = 100L * 1024 * 1024;
+    private static final long MAX_STREAMED_BYTES = 1024 * 1024;
     private static final Set<String> DISALLOWED_COMMANDS = Set.of("rm", "rmdir", "mv", "del", "erase", "dd", "mkfs", "format");
 
+    private static final int MAX_SHELL_SESSIONS = 8;
+    private static final long SHELL_SESSION_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000;
+    private static final int WARM_SHELLS = 2;
+
+    private final Map<String, RunningCommand> runningCommands = new ConcurrentHashMap<>();
+    private final ShellSessionPool shellSessions = new ShellSessionPool(MAX_SHELL_SESSIONS,
+            SHELL_SESSION_IDLE_TIMEOUT_MILLIS, WARM_SHELLS);
+    // Null unless enabled
+    private final CommandResultCache resultCache;
+
+    public BashService(@Value("${mcp.bash.cache.enabled:false}") boolean cacheEnabled,
+                       @Value("${mcp.bash.cache.commands:git status,git log,git diff,git branch,git show,ls,cat,head,wc,uname,pwd,whoami}") String cacheCommands,
+                       @Value("${mcp.bash.cache.ttl-seconds:30}") long cacheTtlSeconds,
+                       @Value("${mcp.bash.cache.max-entries:256}") int cacheMaxEntries,
+                       FileSystemCache fileSystemCache) {
+        this.resultCache = cacheEnabled
+                ? new CommandResultCache(Arrays.stream(cacheCommands.split(",")).map(String::trim).filter(c -> !c.isEmpty()).toList(),
+                        TimeUnit.SECONDS.toMillis(cacheTtlSeconds), cacheMaxEntries)
+                : null;
+        if (resultCache != null) {
+            // Writes of the file tools are seen by the next command, not only once the watcher reports them
+            fileSystemCache.onChange(resultCache::changed);
+        }
+    }
+
     @Tool(description = """
     Run a Bash command and return its output.\s
     Caution: Avoid using commands that alter or delete system files.\s
+    Long outputs keep their first and last 64 KB, 'truncated' tells when bytes in between were dropped.\s
+    With streamOutput, output is sent as logging notifications while the command runs; the first one carries the
+    runId that cancelBash accepts.\s
+    With a sessionId, the command runs in a persistent shell for that id: the working directory and exported
+    variables carry over to the next command with the same sessionId, and workingDirectory only applies when the
+    session is created. Sessions idle for 10 minutes are closed.\s
+    When the server caches results, read-only commands like 'git status' or 'ls' may be answered from the cache
+    while nothing changed in the working directory; 'cached' is then true.\s
+    maxCpuSeconds, maxMemoryMb and maxOutputBytes limit the command and everything it starts; the command is killed
+    when one is exceeded. 'resources' reports the CPU time, wall time and peak resident memory used.
+    maxMemoryMb is only supported on Linux, elsewhere it is rejected.\s
    \s""")
     public String executeBash(@ToolParam(description = "Bash command to execute") String command,
                               @ToolParam(description = "Working directory (optional)", required = false) String workingDirectory,
-                              @ToolParam(description = "Command timeout in seconds (default: 30)", required = false) Integer timeoutSeconds) {
+                              @ToolParam(description = "Command timeout in seconds (default: 30)", required = false) Integer timeoutSeconds,
+                              @ToolParam(description = "Send the output as logging notifications while the command runs", required = false) Boolean streamOutput,
+                              @ToolParam(description = "Run in the persistent shell session with this id, created on first use (optional)", required = false) String sessionId,
+                              @ToolParam(description = "CPU time limit in seconds for the command and its child processes (optional)", required = false) Integer maxCpuSeconds,
+                              @ToolParam(description = "Resident memory limit in MB for the command and its child processes (optional)", required = false) Integer maxMemoryMb,
+                              @ToolParam(description = "Output limit in bytes (default: 100 MB)", required = false) Long maxOutputBytes,
+                              ToolContext toolContext) {
 
         if (isInvalidCommand(command)) {
             return errorMessage("Invalid or disallowed command.");
         }
+        if (maxMemoryMb != null && maxMemoryMb > 0 && !ResourceMonitor.supportsMemoryLimit()) {
+            return errorMessage("maxMemoryMb is not supported on this platform, memory can only be measured through /proc");
+        }
+
+        String runId = UUID.randomUUID().toString();
+        ResourceMonitor.Limits limits = ResourceMonitor.Limits.of(maxCpuSeconds, maxMemoryMb, maxOutputBytes,
+                DEFAULT_MAX_OUTPUT_BYTES);
+        if (sessionId != null && !sessionId.isBlank()) {
+            return executeInSession(command, workingDirectory, timeoutSeconds, streamOutput, sessionId, limits, runId,
+                    toolContext);
+        }
+
+        Path directory = (workingDirectory != null && !workingDirectory.trim().isEmpty()
+                ? Paths.get(workingDirectory) : Paths.get("")).toAbsolutePath().normalize();
+        boolean cacheable = resultCache != null && resultCache.isCacheable(command, directory);
+        if (cacheable) {
+            Map<String, Object> cached = resultCache.get(command, directory);
+            if (cached != null) {
+                cached.put("runId", runId);
+                cached.put("cached", true);
+                return successMessage(cached);
+            }
+        }
 
+        Object cacheToken = cacheable ? resultCache.beginRun(directory) : null;
         try {
             ProcessBuilder processBuilder = configureProcessBuilder(command, workingDirectory);
-            Process process = startProcess(processBuilder, timeoutSeconds);
+            Process process = processBuilder.start();
+            RunningCommand running = new RunningCommand(() -> ResourceMonitor.destroyTree(process.toHandle()));
+            runningCommands.put(runId, running);
+
+            try {
+                ProgressNotifier progress = progressNotifier(streamOutput, runId, command, toolContext);
+
+                // Drain the output while the process runs, a full pipe would otherwise block it until the timeout
+                OutputBuffer output = new OutputBuffer(MAX_OUTPUT_HEAD_BYTES, MAX_OUTPUT_TAIL_BYTES);
+                output.startDraining(process.getInputStream(), progress);
+                ResourceMonitor monitor = new ResourceMonitor(process.toHandle(), limits, output);
+
+                String failure = waitForProcess(process, timeoutSeconds, progress, monitor);
+                output.awaitDrained(OUTPUT_GRACE_MILLIS);
+
+                Map<String, Object> result = captureProcessOutput(command, output);
+                result.put("resources", monitor.usage());
+                if (running.cancelled) {
+                    failure = "Command was cancelled.";
+                }
+                if (progress != null) {
+                    progress.finished(failure != null ? failure : "exited with code " + process.exitValue());
+                }
+                if (failure != null) {
+                    result.put("runId", runId);
+                    result.put(SUCCESS, false);
+                    result.put(ERROR, failure);
+                    return mapper.writeValueAsString(result);
+                }
+
+                result.put("exitCode", process.exitValue());
+                if (cacheToken != null && process.exitValue() == 0) {
+                    resultCache.put(command, directory, cacheToken, result);
+                    cacheToken = null;
+                }
+                result.put("runId", runId);
+                return successMessage(result);
+
+            } catch (InterruptedException e) {
+                // The tool call was abandoned, don't leave the command running
+                ResourceMonitor.destroyTree(process.toHandle());
+                throw e;
+            } finally {
+                runningCommands.remove(runId);
+            }
+
+        } catch (IOException e) {
+            return errorMessage("IO error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorMessage("Execution interrupted: " + e.getMessage());
+        } catch (Exception e) {
+            return errorMessage("Unexpected error: " + e.getMessage());
+        } finally {
+            if (cacheToken != null) {
+                resultCache.cancelRun(cacheToken);
+            }
+            if (resultCache != null && !cacheable) {
+                // The command may have changed files outside the watched trees
+                resultCache.invalidateAll();
+            }
+        }
+    }
+
+    @Tool(description = """
+        Report statistics of the Bash command result cache: entries, hits, misses, hit ratio, evictions and
+        invalidations.
+        """)
+    public String bashCacheStats() {
+        if (resultCache == null) {
+            return errorMessage("The command result cache is disabled, set mcp.bash.cache.enabled to enable it.");
+        }
+        return successMessage(resultCache.stats());
+    }
+
+    @Tool(description = "Close a persistent shell session and kill everything still running in it.")
+    public String closeBashSession(@ToolParam(description = "The sessionId to close") String sessionId) {
+        if (!shellSessions.close(sessionId)) {
+            return errorMessage("No shell session with id " + sessionId);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("sessionId", sessionId);
+        return successMessage(result);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        shellSessions.close();
+        if (resultCache != null) {
+            resultCache.close();
+        }
+    }
+
+    private String executeInSession(String command, String workingDirectory, Integer timeoutSeconds,
+                                    Boolean streamOutput, String sessionId, ResourceMonitor.Limits limits,
+                                    String runId, ToolContext toolContext) {
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(
+                Optional.ofNullable(timeoutSeconds).filter(t -> t > 0).orElse(DEFAULT_TIMEOUT_SECONDS));
+        RunningCommand running = new RunningCommand(() -> shellSessions.close(sessionId));
+        runningCommands.put(runId, running);
+
+        try {
+            Path directory = workingDirectory != null && !workingDirectory.trim().isEmpty() ? Paths.get(workingDirectory) : null;
+            ShellSession session = shellSessions.acquire(sessionId, directory, timeoutMillis);
+            ProgressNotifier progress = progressNotifier(streamOutput, runId, command, toolContext);
+
+            OutputBuffer output = new OutputBuffer(MAX_OUTPUT_HEAD_BYTES, MAX_OUTPUT_TAIL_BYTES);
+            // Rooted at the shell, so the command's children are accounted for
+            ResourceMonitor monitor = new ResourceMonitor(session.handle(), limits, output);
+            String[] exceeded = new String[1];
+            Runnable onTick = () -> {
+                if (progress != null) {
+                    progress.flush();
+                }
+                if (exceeded[0] == null && (exceeded[0] = monitor.sample()) != null) {
+                    shellSessions.close(sessionId);
+                }
+            };
+            String failure = null;
+            Integer exitCode = null;
+            try {
+                exitCode = session.run(command, output, progress, timeoutMillis, onTick);
+            } catch (TimeoutException e) {
+                failure = "Command execution timed out, the shell session was closed.";
+                shellSessions.close(sessionId);
+            } catch (IOException e) {
+                failure = "Shell session failed: " + e.getMessage();
+                shellSessions.close(sessionId);
+            }
+            monitor.sample();
+            if (exceeded[0] != null) {
+                failure = "Command exceeded the " + exceeded[0] + ", the shell session was closed.";
+            }
+            if (running.cancelled) {
+                failure = "Command was cancelled.";
+            }
+            if (failure == null && !session.isAlive()) {
+                // The command ended the shell, e.g. with 'exit'
+                shellSessions.close(sessionId);
+            }
 
-            if (process == null) {
-                return errorMessage("Command execution timed out.");
+            Map<String, Object> result = captureProcessOutput(command, output);
+            result.put("runId", runId);
+            result.put("sessionId", sessionId);
+            result.put("sessionOpen", session.isAlive());
+            result.put("resources", monitor.usage());
+            if (progress != null) {
+                progress.finished(failure != null ? failure : "exited with code " + exitCode);
+            }
+            if (failure != null) {
+                result.put(SUCCESS, false);
+                result.put(ERROR, failure);
+                return mapper.writeValueAsString(result);
             }
 
-            Map<String, Object> result = captureProcessOutput(command, process);
+            result.put("exitCode", exitCode);
             return successMessage(result);
 
         } catch (IOException e) {
@@ -47,7 +275,40 @@ public class BashService extends AbstractToolService {
             return errorMessage("Execution interrupted: " + e.getMessage());
         } catch (Exception e) {
             return errorMessage("Unexpected error: " + e.getMessage());
+        } finally {
+            runningCommands.remove(runId);
+            if (resultCache != null) {
+                // Session commands are never cached, and may change anything
+                resultCache.invalidateAll();
+            }
+        }
+    }
+
+    private ProgressNotifier progressNotifier(Boolean streamOutput, String runId, String command, ToolContext toolContext) {
+        if (!Boolean.TRUE.equals(streamOutput)) {
+            return null;
+        }
+        ProgressNotifier progress = McpToolUtils.getMcpExchange(toolContext)
+                .map(exchange -> new ProgressNotifier(exchange, runId, MAX_STREAMED_BYTES))
+                .orElse(null);
+        if (progress != null) {
+            progress.started(command);
         }
+        return progress;
+    }
+
+    @Tool(description = "Cancel a running Bash command started with streamOutput, killing it and all its child processes.")
+    public String cancelBash(@ToolParam(description = "The runId of the command to cancel") String runId) {
+        RunningCommand running = runningCommands.get(runId);
+        if (running == null) {
+            return errorMessage("No running command with runId " + runId);
+        }
+        running.cancelled = true;
+        running.kill.run();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("runId", runId);
+        return successMessage(result);
     }
 
     private boolean isInvalidCommand(String command) {
@@ -67,29 +328,58 @@ public class BashService extends AbstractToolService {
         return processBuilder;
     }
 
-    private Process startProcess(ProcessBuilder processBuilder, Integer timeoutSeconds) throws IOException, InterruptedException {
-        Process process = processBuilder.start();
+    /**
+     * Wait for the process, sampling its resource usage as it runs. Returns why it was killed, or {@code null} if it
+     * exited on its own.
+     */
+    private String waitForProcess(Process process, Integer timeoutSeconds, ProgressNotifier progress,
+                                  ResourceMonitor monitor) throws InterruptedException {
         int timeout = Optional.ofNullable(timeoutSeconds).filter(t -> t > 0).orElse(DEFAULT_TIMEOUT_SECONDS);
-        boolean completed = process.waitFor(timeout, TimeUnit.SECONDS);
-        if (!completed) {
-            process.destroyForcibly();
-            return null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        long step = TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MILLIS);
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                ResourceMonitor.destroyTree(process.toHandle());
+                return "Command execution timed out.";
+            }
+            boolean completed = process.waitFor(Math.min(remaining, step), TimeUnit.NANOSECONDS);
+            // Send the output received so far
+            if (progress != null) {
+                progress.flush();
+            }
+            String exceeded = monitor.sample();
+            if (completed) {
+                return null;
+            }
+            if (exceeded != null) {
+                ResourceMonitor.destroyTree(process.toHandle());
+                return "Command exceeded the " + exceeded + ".";
+            }
         }
-        return process;
     }
 
-    private Map<String, Object> captureProcessOutput(String command, Process process) throws IOException {
-        List<String> outputLines = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                outputLines.add(line);
-            }
+    private Map<String, Object> captureProcessOutput(String command, OutputBuffer output) {
+        String text = output.text();
+        // Same shape as before: no trailing line break
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - (text.endsWith("\r\n") ? 2 : 1));
         }
         Map<String, Object> result = new HashMap<>();
         result.put("command", command);
-        result.put("exitCode", process.exitValue());
-        result.put("output", String.join("\n", outputLines));
+        result.put("output", text);
+        result.put("outputBytes", output.totalBytes());
+        result.put("truncated", output.isTruncated());
         return result;
     }
+
+    private static final class RunningCommand {
+
+        private final Runnable kill;
+        private volatile boolean cancelled;
+
+        RunningCommand(Runnable kill) {
+            this.kill = kill;
+        }
+    }
 }
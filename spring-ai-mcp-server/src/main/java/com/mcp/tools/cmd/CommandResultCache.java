@@ -0,0 +1,409 @@
+package com.mcp.tools.cmd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of read-only commands, reused while nothing changed.
+ * <p>
+ * Only commands starting with an allowlisted prefix and without shell operators (so {@code ls; touch x} is not
+ * mistaken for {@code ls}) are cached, and only if they read nothing outside the watched working directory: no
+ * argument may resolve outside of it ({@code cat /etc/hosts}, {@code ls ..}), and git commands need the repository
+ * to be the working directory itself. An entry is dropped after its TTL, when any file under its working directory
+ * changes, or when a command that is not cacheable runs, since that command may have changed anything. Working
+ * directory trees are watched recursively with a {@link WatchService}; a tree with too many directories to watch is
+ * not cached at all. The watch service has one key per directory, shared by every tree holding the directory (nested
+ * working directories, or a tree replaced after a change while its entries are still held), so a key is only
+ * cancelled once no tree holds it anymore. Changes made by the file tools of this server are reported through
+ * {@link #changed(Path)} before they return, so they don't depend on how fast the watcher is.
+ */
+final class CommandResultCache implements Closeable {
+
+    private static final int MAX_WATCHED_DIRECTORIES = 20_000;
+    private static final String SHELL_OPERATORS = ";&|<>`$()\n\r";
+
+    private record Key(String command, Path directory) {
+    }
+
+    private record Entry(Map<String, Object> result, long createdMillis, long generation, WatchedTree tree) {
+    }
+
+    private final List<String> prefixes;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<Key, Entry> entries;
+    private final Map<Path, WatchedTree> trees = new HashMap<>();
+    // The trees holding each watched directory's key
+    private final Map<WatchKey, Set<WatchedTree>> treesByKey = new HashMap<>();
+    // Trees too large to watch, with when that was found, so they are not walked on every run
+    private final Map<Path, Long> unwatchable = new HashMap<>();
+    private final WatchService watchService;
+    // Bumped by every command that is not cacheable
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong uncacheableDirectories = new AtomicLong();
+
+    /**
+     * Every directory of one working directory tree, with a counter of the changes seen in it.
+     */
+    private static final class WatchedTree {
+
+        final Path root;
+        final Set<WatchKey> keys = new HashSet<>();
+        long changes;
+        int users;
+
+        WatchedTree(Path root) {
+            this.root = root;
+        }
+    }
+
+    CommandResultCache(List<String> prefixes, long ttlMillis, int maxEntries) {
+        this.prefixes = List.copyOf(prefixes);
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= CommandResultCache.this.maxEntries) {
+                    return false;
+                }
+                evictions.incrementAndGet();
+                release(eldest.getValue().tree());
+                return true;
+            }
+        };
+        this.watchService = newWatchService();
+        if (watchService != null) {
+            Thread.ofPlatform().daemon().name("bash-cache-watcher").start(this::processEvents);
+        }
+    }
+
+    boolean isCacheable(String command, Path directory) {
+        String trimmed = command.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (SHELL_OPERATORS.indexOf(trimmed.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        for (String prefix : prefixes) {
+            if (trimmed.startsWith(prefix)
+                    && (trimmed.length() == prefix.length() || Character.isWhitespace(trimmed.charAt(prefix.length())))) {
+                return readsOnlyBelow(trimmed, directory);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A file tool of this server changed {@code path}: drop the results cached under a tree holding it now.
+     */
+    synchronized void changed(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        for (WatchedTree tree : List.copyOf(trees.values())) {
+            if (absolute.startsWith(tree.root) && tree.changes++ == 0) {
+                trees.remove(tree.root, tree);
+                dropEntries(tree);
+            }
+        }
+    }
+
+    /**
+     * A copy of the cached result, or {@code null}.
+     */
+    synchronized Map<String, Object> get(String command, Path directory) {
+        Key key = new Key(command.trim(), directory);
+        Entry entry = entries.get(key);
+        if (entry != null && !isFresh(entry)) {
+            entries.remove(key);
+            release(entry.tree());
+            invalidations.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        Map<String, Object> result = new HashMap<>(entry.result());
+        result.put("cacheAgeMillis", System.currentTimeMillis() - entry.createdMillis());
+        return result;
+    }
+
+    /**
+     * Start watching {@code directory} before running a cacheable command, so that changes made while it runs count.
+     * Returns the token to pass to {@link #put}, or {@code null} when the result can't be cached.
+     */
+    Object beginRun(Path directory) {
+        WatchedTree tree = acquire(directory);
+        if (tree == null) {
+            return null;
+        }
+        synchronized (this) {
+            return new Entry(null, System.currentTimeMillis(), generation, tree);
+        }
+    }
+
+    /**
+     * Cache {@code result}, unless something changed since {@link #beginRun}.
+     */
+    synchronized void put(String command, Path directory, Object token, Map<String, Object> result) {
+        Entry started = (Entry) token;
+        WatchedTree tree = started.tree();
+        if (started.generation() != generation || tree.changes != 0 || !tree.keys.stream().allMatch(WatchKey::isValid)) {
+            release(tree);
+            return;
+        }
+        Entry previous = entries.put(new Key(command.trim(), directory),
+                new Entry(Collections.unmodifiableMap(new HashMap<>(result)), started.createdMillis(), generation, tree));
+        if (previous != null) {
+            release(previous.tree());
+        }
+    }
+
+    /**
+     * Abandon a {@link #beginRun} whose result is not cached.
+     */
+    synchronized void cancelRun(Object token) {
+        release(((Entry) token).tree());
+    }
+
+    /**
+     * A command that may have changed files anywhere ran: drop everything.
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        invalidations.addAndGet(entries.size());
+        entries.values().forEach(entry -> release(entry.tree()));
+        entries.clear();
+    }
+
+    synchronized Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("watchedTrees", trees.size());
+        stats.put("watchedDirectories", treesByKey.size());
+        stats.put("uncacheableDirectories", uncacheableDirectories.get());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Whether every argument of {@code command}, and option value after a {@code =}, stays below {@code directory}
+     * once symbolic links are resolved, and a git command runs at the top of its repository, whose {@code .git}
+     * directory is then watched with the rest of the tree.
+     */
+    private static boolean readsOnlyBelow(String command, Path directory) {
+        Path root;
+        try {
+            root = directory.toRealPath();
+        } catch (IOException e) {
+            return false;
+        }
+        String[] words = command.split("\\s+");
+        if (words[0].equals("git") && !isRepositoryRoot(root)) {
+            return false;
+        }
+        for (int i = 1; i < words.length; i++) {
+            // No operators were found, so quotes and backslashes only group or escape characters
+            String argument = words[i].replaceAll("[\"'\\\\]", "");
+            if (argument.startsWith("-")) {
+                int equals = argument.indexOf('=');
+                if (equals < 0) {
+                    continue;
+                }
+                argument = argument.substring(equals + 1);
+            }
+            if (argument.startsWith("~")) {
+                return false;
+            }
+            try {
+                Path resolved = root.resolve(argument).normalize();
+                if (!resolved.startsWith(root) || (Files.exists(resolved) && !resolved.toRealPath().startsWith(root))) {
+                    return false;
+                }
+            } catch (InvalidPathException | IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether git run in {@code directory} uses a {@code .git} directory directly in it. Outside of any repository git
+     * only reports that, which may be cached.
+     */
+    private static boolean isRepositoryRoot(Path directory) {
+        for (Path dir = directory; dir != null; dir = dir.getParent()) {
+            Path git = dir.resolve(".git");
+            if (Files.exists(git, LinkOption.NOFOLLOW_LINKS)) {
+                // A .git file (worktree, submodule) points to a git directory elsewhere
+                return dir.equals(directory) && Files.isDirectory(git, LinkOption.NOFOLLOW_LINKS);
+            }
+        }
+        return true;
+    }
+
+    private boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.createdMillis() <= ttlMillis
+                && entry.generation() == generation
+                && entry.tree().changes == 0;
+    }
+
+    private WatchedTree acquire(Path directory) {
+        if (watchService == null) {
+            return null;
+        }
+        synchronized (this) {
+            WatchedTree tree = trees.get(directory);
+            if (tree != null && tree.changes == 0) {
+                tree.users++;
+                return tree;
+            }
+            Long since = unwatchable.get(directory);
+            if (since != null && System.currentTimeMillis() - since <= ttlMillis) {
+                return null;
+            }
+        }
+
+        // Register outside the lock, walking a large tree takes a while
+        WatchedTree tree = new WatchedTree(directory);
+        boolean registered = register(tree, directory);
+        synchronized (this) {
+            // Directories already watched for another tree returned that tree's key
+            List<WatchKey> newKeys = tree.keys.stream().filter(key -> !treesByKey.containsKey(key)).toList();
+            if (!tree.keys.stream().allMatch(WatchKey::isValid)) {
+                // A shared key was cancelled while registering, by the last other tree holding it; retry next run
+                newKeys.forEach(WatchKey::cancel);
+                return null;
+            }
+            if (!registered || treesByKey.size() + newKeys.size() > MAX_WATCHED_DIRECTORIES) {
+                newKeys.forEach(WatchKey::cancel);
+                uncacheableDirectories.incrementAndGet();
+                if (unwatchable.size() >= maxEntries) {
+                    unwatchable.clear();
+                }
+                unwatchable.put(directory, System.currentTimeMillis());
+                return null;
+            }
+            trees.put(directory, tree);
+            tree.keys.forEach(key -> treesByKey.computeIfAbsent(key, k -> new HashSet<>()).add(tree));
+            tree.users++;
+            return tree;
+        }
+    }
+
+    /**
+     * Register every directory below {@code start}; false if there are too many or one can't be watched.
+     */
+    private boolean register(WatchedTree tree, Path start) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (tree.keys.size() >= MAX_WATCHED_DIRECTORIES) {
+                        throw new IOException("Too many directories");
+                    }
+                    tree.keys.add(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+
+    private void release(WatchedTree tree) {
+        if (--tree.users > 0) {
+            return;
+        }
+        for (WatchKey key : tree.keys) {
+            Set<WatchedTree> holders = treesByKey.get(key);
+            if (holders != null && holders.remove(tree) && holders.isEmpty()) {
+                treesByKey.remove(key);
+                key.cancel();
+            }
+        }
+        tree.keys.clear();
+        trees.remove(tree.root, tree);
+    }
+
+    private void dropEntries(WatchedTree tree) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.tree() == tree) {
+                it.remove();
+                release(tree);
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private void processEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = key.pollEvents().stream().anyMatch(CommandResultCache::isChange);
+                synchronized (this) {
+                    Set<WatchedTree> holders = treesByKey.get(key);
+                    if (changed && holders != null) {
+                        for (WatchedTree tree : List.copyOf(holders)) {
+                            if (tree.changes++ == 0) {
+                                // Results cached under this tree are stale; the tree is replaced on the next run in it
+                                trees.remove(tree.root, tree);
+                                dropEntries(tree);
+                            }
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Git takes {@code .lock} files even to only read (e.g. {@code git status} refreshing the index), and deletes them
+     * when nothing changed. A real change renames the lock file over the target, which is reported for the target.
+     */
+    private static boolean isChange(WatchEvent<?> event) {
+        return !(event.context() instanceof Path path && path.getFileName().toString().endsWith(".lock")
+                && event.kind() != StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    private static WatchService newWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
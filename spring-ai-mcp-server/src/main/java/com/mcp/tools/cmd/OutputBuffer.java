@@ -0,0 +1,152 @@
+package com.mcp.tools.cmd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bounded capture of a process output: the first {@code headLimit} bytes and the last {@code tailLimit} bytes are
+ * kept, everything in between is only counted. The output is read on a virtual thread while the process runs, so a
+ * process writing more than the pipe buffer never blocks on a full pipe.
+ */
+class OutputBuffer {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final byte[] head;
+    private final byte[] tail;
+    private int headSize;
+    // Ring buffer: tailStart is the oldest byte once the tail is full
+    private int tailStart;
+    private int tailSize;
+    private long totalBytes;
+
+    private InputStream stream;
+    private Thread drainer;
+
+    /**
+     * Receives the output as it is read, on the draining thread.
+     */
+    interface Listener {
+        void onOutput(byte[] bytes, int offset, int length);
+    }
+
+    OutputBuffer(int headLimit, int tailLimit) {
+        this.head = new byte[headLimit];
+        this.tail = new byte[tailLimit];
+    }
+
+    /**
+     * Start copying {@code stream} into this buffer on a virtual thread, until end of stream.
+     */
+    void startDraining(InputStream stream) {
+        startDraining(stream, null);
+    }
+
+    /**
+     * Like {@link #startDraining(InputStream)}, also passing every chunk read to {@code listener}.
+     */
+    void startDraining(InputStream stream, Listener listener) {
+        this.stream = stream;
+        this.drainer = Thread.ofVirtual().name("process-output").start(() -> {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            try (stream) {
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    write(buffer, 0, read);
+                    if (listener != null) {
+                        listener.onOutput(buffer, 0, read);
+                    }
+                }
+            } catch (IOException e) {
+                // Stream closed by awaitDrained, or the process died; keep what was read
+            }
+        });
+    }
+
+    /**
+     * Wait for the end of the output. Background children of the process may keep the pipe open after it exited, so
+     * the stream is closed after {@code graceMillis} and whatever was read until then is kept. A read already blocked
+     * on the pipe only returns when those children exit, but nothing it reads afterwards is reported.
+     */
+    void awaitDrained(long graceMillis) throws InterruptedException {
+        if (drainer == null) {
+            return;
+        }
+        drainer.join(graceMillis);
+        if (drainer.isAlive()) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Nothing more to read anyway
+            }
+        }
+    }
+
+    synchronized void write(byte[] bytes, int offset, int length) {
+        totalBytes += length;
+        int toHead = Math.min(length, head.length - headSize);
+        System.arraycopy(bytes, offset, head, headSize, toHead);
+        headSize += toHead;
+        offset += toHead;
+        length -= toHead;
+        if (length == 0 || tail.length == 0) {
+            return;
+        }
+
+        // Only the last tail.length bytes of this chunk can survive
+        if (length >= tail.length) {
+            System.arraycopy(bytes, offset + length - tail.length, tail, 0, tail.length);
+            tailStart = 0;
+            tailSize = tail.length;
+            return;
+        }
+        int writeAt = (tailStart + tailSize) % tail.length;
+        int first = Math.min(length, tail.length - writeAt);
+        System.arraycopy(bytes, offset, tail, writeAt, first);
+        System.arraycopy(bytes, offset + first, tail, 0, length - first);
+        int overflow = Math.max(0, tailSize + length - tail.length);
+        tailSize = Math.min(tail.length, tailSize + length);
+        tailStart = (tailStart + overflow) % tail.length;
+    }
+
+    synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    synchronized boolean isTruncated() {
+        return totalBytes > headSize + tailSize;
+    }
+
+    /**
+     * The captured output as text, with a marker where bytes were dropped.
+     */
+    synchronized String text() {
+        byte[] ordered = new byte[tailSize];
+        int first = Math.min(tailSize, tail.length - tailStart);
+        System.arraycopy(tail, tailStart, ordered, 0, first);
+        System.arraycopy(tail, 0, ordered, first, tailSize - first);
+
+        long omitted = totalBytes - headSize - tailSize;
+        if (omitted == 0) {
+            byte[] all = new byte[headSize + tailSize];
+            System.arraycopy(head, 0, all, 0, headSize);
+            System.arraycopy(ordered, 0, all, headSize, tailSize);
+            return decode(all, 0, all.length);
+        }
+
+        // Don't start the tail in the middle of a UTF-8 character
+        int tailFrom = 0;
+        while (tailFrom < Math.min(3, ordered.length) && (ordered[tailFrom] & 0xC0) == 0x80) {
+            tailFrom++;
+        }
+        return decode(head, 0, headSize)
+                + "\n... [" + (omitted + tailFrom) + " bytes omitted] ...\n"
+                + decode(ordered, tailFrom, ordered.length - tailFrom);
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes, offset, length)).toString();
+    }
+}
@@ -5,9 +5,7 @@ import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -17,6 +15,11 @@ import static org.springframework.ai.model.ModelOptionsUtils.OBJECT_MAPPER;
 public class PowerShellService extends AbstractToolService {
 
     private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int MAX_OUTPUT_HEAD_BYTES = 64 * 1024;
+    private static final int MAX_OUTPUT_TAIL_BYTES = 64 * 1024;
+    private static final long OUTPUT_GRACE_MILLIS = 1000;
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_MAX_OUTPUT_BYTES = 100L * 1024 * 1024;
     private static final Set<String> DISALLOWED_COMMANDS = Set.of(
             "Remove-Item", "Move-Item", "Format-Volume", "Stop-Process", "Stop-Service", "Clear-Content",
             "rm", "del", "erase", "rd", "ri", "mv", "move", "clc",
@@ -26,26 +29,49 @@ public class PowerShellService extends AbstractToolService {
     @Tool(description = """
     Run a PowerShell command and return its output.
     Note: Avoid using commands that alter or delete system files.
+    maxCpuSeconds, maxMemoryMb and maxOutputBytes limit the command and everything it starts; the command is killed
+    when one is exceeded. 'resources' reports the CPU time, wall time and peak resident memory used.
+    maxMemoryMb is only supported on Linux, elsewhere it is rejected.
     """)
     public String executePowerShell(@ToolParam(description = "PowerShell command to execute") String command,
                                     @ToolParam(description = "Working directory (optional)", required = false) String workingDirectory,
-                                    @ToolParam(description = "Command timeout in seconds (default: 30)", required = false) Integer timeoutSeconds) {
+                                    @ToolParam(description = "Command timeout in seconds (default: 30)", required = false) Integer timeoutSeconds,
+                                    @ToolParam(description = "CPU time limit in seconds for the command and its child processes (optional)", required = false) Integer maxCpuSeconds,
+                                    @ToolParam(description = "Resident memory limit in MB for the command and its child processes (optional)", required = false) Integer maxMemoryMb,
+                                    @ToolParam(description = "Output limit in bytes (default: 100 MB)", required = false) Long maxOutputBytes) {
 
         if (isInvalidCommand(command)) {
             return errorMessage("Invalid or disallowed command.");
         }
+        if (maxMemoryMb != null && maxMemoryMb > 0 && !ResourceMonitor.supportsMemoryLimit()) {
+            return errorMessage("maxMemoryMb is not supported on this platform, memory can only be measured through /proc");
+        }
 
         try {
             ProcessBuilder processBuilder = configureProcessBuilder(command, workingDirectory);
-            Process process = startProcess(processBuilder, timeoutSeconds);
-
-            if (process == null) {
-                return errorMessage("Command execution timed out.");
+            Process process = processBuilder.start();
+            try {
+                // Drain the output while the process runs, a full pipe would otherwise block it until the timeout
+                OutputBuffer output = new OutputBuffer(MAX_OUTPUT_HEAD_BYTES, MAX_OUTPUT_TAIL_BYTES);
+                output.startDraining(process.getInputStream());
+                ResourceMonitor monitor = new ResourceMonitor(process.toHandle(), ResourceMonitor.Limits.of(
+                        maxCpuSeconds, maxMemoryMb, maxOutputBytes, DEFAULT_MAX_OUTPUT_BYTES), output);
+
+                String failure = waitForProcess(process, timeoutSeconds, monitor);
+                output.awaitDrained(OUTPUT_GRACE_MILLIS);
+
+                Map<String, Object> result = captureProcessOutput(command, output);
+                result.put("resources", monitor.usage());
+                if (failure != null) {
+                    return errorMessage(failure, result);
+                }
+                return evaluateResult(result, process.exitValue());
+
+            } catch (InterruptedException e) {
+                ResourceMonitor.destroyTree(process.toHandle());
+                throw e;
             }
 
-            Map<String, Object> result = captureProcessOutput(command, process);
-            return evaluateResult(result, process.exitValue());
-
         } catch (IOException e) {
             return handleIOException(e);
         } catch (InterruptedException e) {
@@ -76,28 +102,44 @@ public class PowerShellService extends AbstractToolService {
         return processBuilder;
     }
 
-    private Process startProcess(ProcessBuilder processBuilder, Integer timeoutSeconds) throws IOException, InterruptedException {
-        Process process = processBuilder.start();
+    /**
+     * Wait for the process, sampling its resource usage as it runs. Returns why it was killed, or {@code null} if it
+     * exited on its own.
+     */
+    private String waitForProcess(Process process, Integer timeoutSeconds, ResourceMonitor monitor)
+            throws InterruptedException {
         int timeout = Optional.ofNullable(timeoutSeconds).filter(t -> t > 0).orElse(DEFAULT_TIMEOUT_SECONDS);
-        boolean completed = process.waitFor(timeout, TimeUnit.SECONDS);
-        if (!completed) {
-            process.destroyForcibly();
-            return null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        long step = TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MILLIS);
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                ResourceMonitor.destroyTree(process.toHandle());
+                return "Command execution timed out.";
+            }
+            boolean completed = process.waitFor(Math.min(remaining, step), TimeUnit.NANOSECONDS);
+            String exceeded = monitor.sample();
+            if (completed) {
+                return null;
+            }
+            if (exceeded != null) {
+                ResourceMonitor.destroyTree(process.toHandle());
+                return "Command exceeded the " + exceeded + ".";
+            }
         }
-        return process;
     }
 
-    private Map<String, Object> captureProcessOutput(String command, Process process) throws IOException {
-        List<String> outputLines = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                outputLines.add(line);
-            }
+    private Map<String, Object> captureProcessOutput(String command, OutputBuffer output) {
+        // Lines joined with '\n' and no trailing line break, as when the output was read line by line
+        String text = output.text().replace("\r\n", "\n");
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
         }
         Map<String, Object> result = new HashMap<>();
         result.put("command", command);
-        result.put("output", String.join("\n", outputLines));
+        result.put("output", text);
+        result.put("outputBytes", output.totalBytes());
+        result.put("truncated", output.isTruncated());
         return result;
     }
 
@@ -0,0 +1,97 @@
+package com.mcp.tools.cmd;
+
+import io.modelcontextprotocol.server.McpSyncServerExchange;
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Forwards the output of a running command to the MCP client as logging notifications, so the client sees progress
+ * before the tool call returns. Output is batched: {@link #flush()} sends what arrived since the last call, and is
+ * called periodically by the thread waiting for the process.
+ */
+class ProgressNotifier implements OutputBuffer.Listener {
+
+    private static final String LOGGER = "bash";
+
+    private final McpSyncServerExchange exchange;
+    private final String runId;
+    private final long maxStreamedBytes;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long streamedBytes;
+    private boolean limitReported;
+
+    ProgressNotifier(McpSyncServerExchange exchange, String runId, long maxStreamedBytes) {
+        this.exchange = exchange;
+        this.runId = runId;
+        this.maxStreamedBytes = maxStreamedBytes;
+    }
+
+    void started(String command) {
+        send("[" + runId + "] started: " + command);
+    }
+
+    void finished(String status) {
+        flush();
+        send("[" + runId + "] " + status);
+    }
+
+    @Override
+    public synchronized void onOutput(byte[] bytes, int offset, int length) {
+        long room = maxStreamedBytes - streamedBytes - pending.size();
+        if (room > 0) {
+            pending.write(bytes, offset, (int) Math.min(length, room));
+        }
+    }
+
+    /**
+     * Send the output received since the last flush, if any.
+     */
+    void flush() {
+        String chunk;
+        boolean reportLimit = false;
+        synchronized (this) {
+            if (pending.size() == 0) {
+                return;
+            }
+            // Keep an incomplete UTF-8 character for the next chunk
+            byte[] bytes = pending.toByteArray();
+            int end = completeCharacters(bytes);
+            chunk = new String(bytes, 0, end, StandardCharsets.UTF_8);
+            pending.reset();
+            pending.write(bytes, end, bytes.length - end);
+            streamedBytes += end;
+            if (streamedBytes + pending.size() >= maxStreamedBytes && !limitReported) {
+                limitReported = true;
+                reportLimit = true;
+            }
+        }
+        send("[" + runId + "] " + chunk);
+        if (reportLimit) {
+            send("[" + runId + "] output limit for notifications reached, the rest is only in the result");
+        }
+    }
+
+    private void send(String data) {
+        try {
+            exchange.loggingNotification(new McpSchema.LoggingMessageNotification(McpSchema.LoggingLevel.INFO, LOGGER, data));
+        } catch (RuntimeException e) {
+            // The client went away or does not accept notifications, the command still runs to completion
+        }
+    }
+
+    private static int completeCharacters(byte[] bytes) {
+        int end = bytes.length;
+        for (int i = 1; i <= Math.min(3, bytes.length); i++) {
+            int b = bytes[bytes.length - i] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue;
+            }
+            // Lead byte: complete only if all of its continuation bytes are there
+            int needed = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return needed > i ? bytes.length - i : end;
+        }
+        return end;
+    }
+}
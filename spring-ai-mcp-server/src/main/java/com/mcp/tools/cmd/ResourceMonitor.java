@@ -0,0 +1,146 @@
+package com.mcp.tools.cmd;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the CPU time and resident memory of a process and all its descendants, and checks them against per-command
+ * limits. On Linux the numbers come from {@code /proc}, where CPU time includes children that already exited and were
+ * waited for; elsewhere only CPU time of live processes is known, and memory is neither reported nor limited, so
+ * callers reject a memory limit there (see {@link #supportsMemoryLimit()}).
+ */
+final class ResourceMonitor {
+
+    // USER_HZ, fixed at 100 on every mainstream Linux architecture
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+    private static final Path PROC = Paths.get("/proc");
+    private static final boolean HAS_PROC = Files.isDirectory(PROC.resolve("self"));
+
+    /**
+     * Limits for one command, a value of 0 or less means unlimited.
+     */
+    record Limits(long maxCpuMillis, long maxRssKb, long maxOutputBytes) {
+
+        static Limits of(Integer maxCpuSeconds, Integer maxMemoryMb, Long maxOutputBytes, long defaultMaxOutputBytes) {
+            return new Limits(maxCpuSeconds != null ? maxCpuSeconds * 1000L : 0,
+                    maxMemoryMb != null ? maxMemoryMb * 1024L : 0,
+                    maxOutputBytes != null ? maxOutputBytes : defaultMaxOutputBytes);
+        }
+    }
+
+    private final ProcessHandle root;
+    private final Limits limits;
+    private final OutputBuffer output;
+    private final long startNanos = System.nanoTime();
+    private final long baselineCpuMillis;
+    private long cpuMillis;
+    private long peakRssKb = -1;
+    private long wallMillis;
+
+    ResourceMonitor(ProcessHandle root, Limits limits, OutputBuffer output) {
+        this.root = root;
+        this.limits = limits;
+        this.output = output;
+        // A long-lived process (a shell session) already used some CPU before this command
+        this.baselineCpuMillis = treeCpuMillis(root.descendants().toList());
+    }
+
+    /**
+     * Whether a memory limit can be enforced here. Without {@code /proc} resident memory can't be measured.
+     */
+    static boolean supportsMemoryLimit() {
+        return HAS_PROC;
+    }
+
+    /**
+     * Take a sample and return the name of the exceeded limit, or {@code null}.
+     */
+    String sample() {
+        List<ProcessHandle> descendants = root.descendants().toList();
+        cpuMillis = Math.max(cpuMillis, treeCpuMillis(descendants) - baselineCpuMillis);
+        if (HAS_PROC) {
+            long rss = rssKb(root);
+            for (ProcessHandle process : descendants) {
+                rss += rssKb(process);
+            }
+            peakRssKb = Math.max(peakRssKb, rss);
+        }
+        wallMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        if (limits.maxCpuMillis() > 0 && cpuMillis > limits.maxCpuMillis()) {
+            return "CPU time limit of " + limits.maxCpuMillis() / 1000 + " s";
+        }
+        if (limits.maxRssKb() > 0 && peakRssKb > limits.maxRssKb()) {
+            return "memory limit of " + limits.maxRssKb() / 1024 + " MB";
+        }
+        if (limits.maxOutputBytes() > 0 && output.totalBytes() > limits.maxOutputBytes()) {
+            return "output limit of " + limits.maxOutputBytes() + " bytes";
+        }
+        return null;
+    }
+
+    /**
+     * Resource usage as reported in tool results.
+     */
+    Map<String, Object> usage() {
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("cpuMillis", cpuMillis);
+        usage.put("wallMillis", wallMillis);
+        if (peakRssKb >= 0) {
+            usage.put("peakRssKb", peakRssKb);
+        }
+        return usage;
+    }
+
+    /**
+     * Kill a process and all its descendants. Descendants go first, so none of them is re-parented and escapes.
+     */
+    static void destroyTree(ProcessHandle root) {
+        root.descendants().forEach(ProcessHandle::destroyForcibly);
+        root.destroyForcibly();
+    }
+
+    private long treeCpuMillis(List<ProcessHandle> descendants) {
+        long total = cpuMillis(root);
+        for (ProcessHandle process : descendants) {
+            total += cpuMillis(process);
+        }
+        return total;
+    }
+
+    private static long cpuMillis(ProcessHandle process) {
+        if (!HAS_PROC) {
+            return process.info().totalCpuDuration().map(Duration::toMillis).orElse(0L);
+        }
+        try {
+            String stat = Files.readString(PROC.resolve(Long.toString(process.pid())).resolve("stat"));
+            // The command name may contain spaces, fields are counted after its closing parenthesis
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12])
+                    + Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+            return ticks * 1000 / CLOCK_TICKS_PER_SECOND;
+        } catch (IOException | RuntimeException e) {
+            // The process exited between listing and reading
+            return 0;
+        }
+    }
+
+    private static long rssKb(ProcessHandle process) {
+        try {
+            for (String line : Files.readAllLines(PROC.resolve(Long.toString(process.pid())).resolve("status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The process exited between listing and reading
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,191 @@
+package com.mcp.tools.cmd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long-lived bash process running commands sent over its stdin, one at a time. The working directory, variables and
+ * functions set by a command stay for the next ones.
+ * <p>
+ * Each command is followed by a {@code printf} of a random sentinel and the exit status; everything the shell writes
+ * before the sentinel is the command output. Commands run through {@code eval}, so a syntax error fails the command
+ * instead of the shell, and with stdin from {@code /dev/null}, so they can't swallow the next command.
+ */
+final class ShellSession implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final long TICK_MILLIS = 100;
+
+    private final Process process;
+    private final OutputStream stdin;
+    private final InputStream stdout;
+    private final String marker = "__MCP_SHELL_" + UUID.randomUUID().toString().replace("-", "") + "__";
+    private final byte[] sentinel = ("\n" + marker).getBytes(StandardCharsets.US_ASCII);
+    // Bytes read past the end of the previous command, output of background jobs
+    private byte[] leftover = new byte[0];
+    private volatile long lastUsed = System.currentTimeMillis();
+    private volatile boolean busy;
+
+    ShellSession() throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder("/bin/bash", "--noprofile", "--norc");
+        processBuilder.redirectErrorStream(true);
+        process = processBuilder.start();
+        stdin = process.getOutputStream();
+        stdout = process.getInputStream();
+    }
+
+    ProcessHandle handle() {
+        return process.toHandle();
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    long lastUsed() {
+        return lastUsed;
+    }
+
+    boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * Run {@code command} in this shell and return its exit status. On timeout the shell is killed, since it is still
+     * busy with the command. Returns the shell exit status if the command ended the shell (e.g. {@code exit}).
+     * {@code onTick}, if given, is called regularly while waiting.
+     */
+    synchronized int run(String command, OutputBuffer output, OutputBuffer.Listener listener, long timeoutMillis,
+                         Runnable onTick) throws IOException, InterruptedException, TimeoutException {
+        if (!process.isAlive()) {
+            throw new IOException("Shell session has exited");
+        }
+        busy = true;
+        lastUsed = System.currentTimeMillis();
+        String script = "{ eval " + quote(command) + " ; } < /dev/null\nprintf '\\n%s%d\\n' '" + marker + "' $?\n";
+        stdin.write(script.getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+
+        FutureTask<Integer> reader = new FutureTask<>(() -> readUntilSentinel(output, listener));
+        Thread.ofVirtual().name("shell-session-output").start(reader);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                long wait = onTick != null ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS)) : remaining;
+                try {
+                    return reader.get(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        throw e;
+                    }
+                    onTick.run();
+                }
+            }
+        } catch (TimeoutException | InterruptedException e) {
+            close();
+            throw e;
+        } catch (ExecutionException e) {
+            close();
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            busy = false;
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Copy output until the sentinel, then parse the exit status after it.
+     */
+    private int readUntilSentinel(OutputBuffer output, OutputBuffer.Listener listener)
+            throws IOException, InterruptedException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        // Length of the sentinel prefix matched so far. '\n' only occurs at its start, so a mismatch never hides an
+        // overlapping match.
+        int matched = 0;
+        StringBuilder status = null;
+
+        byte[] chunk = leftover;
+        int length = leftover.length;
+        leftover = new byte[0];
+        while (true) {
+            if (length == 0) {
+                length = stdout.read(buffer);
+                if (length == -1) {
+                    // The command ended the shell
+                    emit(sentinel, 0, matched, output, listener);
+                    return process.waitFor();
+                }
+                chunk = buffer;
+            }
+
+            int segmentStart = 0;
+            for (int i = 0; i < length; i++) {
+                byte b = chunk[i];
+                if (status != null) {
+                    if (b == '\n') {
+                        leftover = Arrays.copyOfRange(chunk, i + 1, length);
+                        return Integer.parseInt(status.toString());
+                    }
+                    status.append((char) b);
+                    continue;
+                }
+                if (b == sentinel[matched]) {
+                    if (matched == 0) {
+                        emit(chunk, segmentStart, i - segmentStart, output, listener);
+                    }
+                    matched++;
+                    if (matched == sentinel.length) {
+                        status = new StringBuilder();
+                    }
+                    segmentStart = i + 1;
+                } else if (matched > 0) {
+                    // Not the sentinel after all, the matched prefix was output
+                    emit(sentinel, 0, matched, output, listener);
+                    matched = b == sentinel[0] ? 1 : 0;
+                    segmentStart = matched == 1 ? i + 1 : i;
+                }
+            }
+            if (status == null && matched == 0) {
+                emit(chunk, segmentStart, length - segmentStart, output, listener);
+            }
+            length = 0;
+        }
+    }
+
+    private static void emit(byte[] bytes, int offset, int length, OutputBuffer output, OutputBuffer.Listener listener) {
+        if (length <= 0) {
+            return;
+        }
+        output.write(bytes, offset, length);
+        if (listener != null) {
+            listener.onOutput(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Kill the shell and everything started from it.
+     */
+    @Override
+    public void close() {
+        ResourceMonitor.destroyTree(process.toHandle());
+    }
+
+    static String quote(String text) {
+        return "'" + text.replace("'", "'\\''") + "'";
+    }
+
+    static String changeDirectoryCommand(Path directory) {
+        return "cd -- " + quote(directory.toString());
+    }
+}
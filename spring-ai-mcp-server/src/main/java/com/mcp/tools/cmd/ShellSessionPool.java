@@ -0,0 +1,141 @@
+package com.mcp.tools.cmd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shell sessions by id, bounded in number and closed after being idle. A few shells are started ahead of time, so
+ * opening a session doesn't wait for bash to start.
+ */
+final class ShellSessionPool implements Closeable {
+
+    private final int maxSessions;
+    private final long idleTimeoutMillis;
+    private final int warmShells;
+
+    private final Map<String, ShellSession> sessions = new ConcurrentHashMap<>();
+    private final Deque<ShellSession> warm = new ArrayDeque<>();
+    private volatile boolean closed;
+
+    ShellSessionPool(int maxSessions, long idleTimeoutMillis, int warmShells) {
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.warmShells = warmShells;
+    }
+
+    /**
+     * The session with this id, opened in {@code workingDirectory} if it doesn't exist yet.
+     */
+    ShellSession acquire(String sessionId, Path workingDirectory, long timeoutMillis)
+            throws IOException, InterruptedException, TimeoutException {
+        evictIdle();
+        ShellSession session = sessions.get(sessionId);
+        if (session != null && session.isAlive()) {
+            return session;
+        }
+        if (session != null) {
+            sessions.remove(sessionId, session);
+        }
+
+        synchronized (sessions) {
+            session = sessions.get(sessionId);
+            if (session != null) {
+                return session;
+            }
+            if (sessions.size() >= maxSessions) {
+                throw new IllegalStateException("Too many shell sessions (" + maxSessions + "), close one first");
+            }
+            session = takeWarmShell();
+            sessions.put(sessionId, session);
+        }
+        replenish();
+
+        if (workingDirectory != null) {
+            OutputBuffer output = new OutputBuffer(4096, 0);
+            int status = session.run(ShellSession.changeDirectoryCommand(workingDirectory), output, null, timeoutMillis, null);
+            if (status != 0) {
+                close(sessionId);
+                throw new IOException("Cannot change to working directory: " + output.text().trim());
+            }
+        }
+        return session;
+    }
+
+    boolean close(String sessionId) {
+        ShellSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        return true;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sessions.keySet().forEach(this::close);
+        synchronized (warm) {
+            warm.forEach(ShellSession::close);
+            warm.clear();
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        sessions.forEach((id, session) -> {
+            if (!session.isAlive() || (!session.isBusy() && now - session.lastUsed() > idleTimeoutMillis)) {
+                close(id);
+            }
+        });
+    }
+
+    private ShellSession takeWarmShell() throws IOException {
+        synchronized (warm) {
+            while (!warm.isEmpty()) {
+                ShellSession shell = warm.poll();
+                if (shell.isAlive()) {
+                    return shell;
+                }
+            }
+        }
+        return new ShellSession();
+    }
+
+    /**
+     * Start shells in the background until {@code warmShells} are waiting.
+     */
+    private void replenish() {
+        Thread.ofVirtual().name("shell-session-warmup").start(() -> {
+            while (!closed) {
+                synchronized (warm) {
+                    if (warm.size() >= warmShells) {
+                        return;
+                    }
+                }
+                try {
+                    ShellSession shell = new ShellSession();
+                    synchronized (warm) {
+                        if (closed || warm.size() >= warmShells) {
+                            shell.close();
+                            return;
+                        }
+                        warm.add(shell);
+                    }
+                } catch (IOException e) {
+                    // Sessions will then start bash on demand
+                    return;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,236 @@
+package com.mcp.tools.files;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Read-only random access to the raw bytes of a file.
+ * <p>
+ * Small files are read into a single heap buffer. Larger files are memory-mapped in 1 GB segments so that files
+ * bigger than 2 GB can be scanned without loading them on the heap; only the lines that are actually needed get
+ * decoded into Strings. Mappings are only released by the garbage collector, and on Windows a live mapping makes
+ * replacing the file fail, so there large files are instead read in 1 MB pages, a few of them kept at a time, from a
+ * channel that {@link #close()} releases.
+ */
+final class ByteSource implements Closeable {
+
+    static final long HEAP_READ_THRESHOLD = 1024 * 1024;
+
+    private static final boolean MAPPING_SAFE = !System.getProperty("os.name", "").startsWith("Windows");
+    private static final int MAPPED_SEGMENT_BITS = 30;
+    private static final int PAGE_BITS = 20;
+    private static final int RESIDENT_PAGES = 8;
+    private static final int BINARY_SNIFF_LENGTH = 8000;
+    private static final int MAX_DECODED_LINE_BYTES = 4 * 1024 * 1024;
+
+    private final ByteBuffer[] segments;
+    private final int segmentBits;
+    private final long segmentMask;
+    private final long size;
+    // Only for paged files: the channel the pages are read from, and which pages are loaded, oldest first
+    private final FileChannel channel;
+    private final ArrayDeque<Integer> residentPages = new ArrayDeque<>();
+
+    private ByteSource(ByteBuffer[] segments, int segmentBits, long size, FileChannel channel) {
+        this.segments = segments;
+        this.segmentBits = segmentBits;
+        this.segmentMask = (1L << segmentBits) - 1;
+        this.size = size;
+        this.channel = channel;
+    }
+
+    static ByteSource open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size <= HEAP_READ_THRESHOLD) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading until the buffer is full or EOF
+                }
+                buffer.flip();
+                channel.close();
+                return new ByteSource(new ByteBuffer[]{buffer}, MAPPED_SEGMENT_BITS, buffer.limit(), null);
+            }
+            if (!MAPPING_SAFE) {
+                // Loaded on first use
+                return new ByteSource(new ByteBuffer[segmentCount(size, PAGE_BITS)], PAGE_BITS, size, channel);
+            }
+
+            long segmentSize = 1L << MAPPED_SEGMENT_BITS;
+            ByteBuffer[] segments = new ByteBuffer[segmentCount(size, MAPPED_SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << MAPPED_SEGMENT_BITS;
+                // The mapping stays valid after the channel is closed
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+            }
+            channel.close();
+            return new ByteSource(segments, MAPPED_SEGMENT_BITS, size, null);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long position) {
+        return segment((int) (position >>> segmentBits)).get((int) (position & segmentMask));
+    }
+
+    /**
+     * A file is considered binary when its first bytes contain a NUL byte.
+     */
+    boolean isBinary() {
+        long limit = Math.min(size, BINARY_SNIFF_LENGTH);
+        for (long i = 0; i < limit; i++) {
+            if (get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find {@code needle} at or after {@code from}. ASCII letters are compared case-insensitively, like
+     * {@link java.util.regex.Pattern#CASE_INSENSITIVE}; other bytes must match exactly.
+     *
+     * @param needle the UTF-8 bytes to find, ASCII letters in lower case
+     * @return the position of the first occurrence, or -1
+     */
+    long find(byte[] needle, long from) {
+        long last = size - needle.length;
+        byte first = needle[0];
+        for (long i = from; i <= last; i++) {
+            if (toLowerAscii(get(i)) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < needle.length && toLowerAscii(get(i + j)) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Start of the line containing {@code position}, not looking back further than {@code floor}.
+     */
+    long lineStart(long position, long floor) {
+        long i = position;
+        while (i > floor && get(i - 1) != '\n') {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Position of the line feed ending the line that starts at {@code position}, or the file size.
+     */
+    long lineEnd(long position) {
+        long i = position;
+        while (i < size && get(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    long countLineFeeds(long from, long to) {
+        long count = 0;
+        for (long i = from; i < to; i++) {
+            if (get(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decode the line between {@code start} and {@code end} (exclusive), dropping a trailing carriage return.
+     * Invalid UTF-8 is replaced rather than rejected, and very long lines are cut.
+     */
+    String decodeLine(long start, long end) {
+        if (end > start && get(end - 1) == '\r') {
+            end--;
+        }
+        int length = (int) Math.min(end - start, MAX_DECODED_LINE_BYTES);
+        if (length == 0) {
+            return "";
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer segment = segment((int) (start >>> segmentBits));
+        int offset = (int) (start & segmentMask);
+        if (offset + length <= segment.limit()) {
+            segment.get(offset, bytes);
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[i] = get(start + i);
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer segment(int index) {
+        ByteBuffer segment = segments[index];
+        return segment != null ? segment : loadPage(index);
+    }
+
+    private ByteBuffer loadPage(int index) {
+        if (residentPages.size() == RESIDENT_PAGES) {
+            segments[residentPages.removeFirst()] = null;
+        }
+        long start = (long) index << segmentBits;
+        ByteBuffer page = ByteBuffer.allocate((int) Math.min(1L << segmentBits, size - start));
+        try {
+            while (page.hasRemaining() && channel.read(page, start + page.position()) >= 0) {
+                // keep reading until the page is full or EOF
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (page.hasRemaining()) {
+            // Truncated while scanning, as a mapped file would fail
+            throw new UncheckedIOException(new EOFException("File shrank while reading"));
+        }
+        page.flip();
+        segments[index] = page;
+        residentPages.addLast(index);
+        return page;
+    }
+
+    private static int segmentCount(long size, int segmentBits) {
+        return (int) ((size + (1L << segmentBits) - 1) >>> segmentBits);
+    }
+
+    static byte[] needle(String literal) {
+        byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = toLowerAscii(bytes[i]);
+        }
+        return bytes;
+    }
+
+    private static byte toLowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
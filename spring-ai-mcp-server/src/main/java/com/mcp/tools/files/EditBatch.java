@@ -0,0 +1,276 @@
+package com.mcp.tools.files;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Applies a batch of edits to one text in a single pass, as a transaction: every edit is located in the original
+ * text, and either all of them are applied or none.
+ * <p>
+ * Literal edits replace every occurrence of their text, like {@link String#replace}; all literal anchors are found in
+ * one scan with an Aho-Corasick automaton, which sees CRLF and CR line endings as LF. Regex edits replace their first
+ * match in the text as it is. The rest of the text, line endings included, is left untouched. Edits whose matches overlap are
+ * rejected, since the result would depend on the order in which they are applied.
+ */
+final class EditBatch {
+
+    record Edit(String oldText, String newText, boolean useRegex) {
+    }
+
+    /**
+     * A replacement of {@code [start, end)} of the original text by {@code replacement}.
+     */
+    record Match(int edit, int start, int end, String replacement) {
+    }
+
+    record Result(String content, List<List<Match>> matchesByEdit) {
+    }
+
+    static final class EditException extends Exception {
+
+        enum Reason { NOT_FOUND, OVERLAP, INVALID_PATTERN }
+
+        private final Reason reason;
+        private final int edit;
+
+        EditException(Reason reason, int edit, String message) {
+            super(message);
+            this.reason = reason;
+            this.edit = edit;
+        }
+
+        Reason reason() {
+            return reason;
+        }
+
+        int edit() {
+            return edit;
+        }
+    }
+
+    private EditBatch() {
+    }
+
+    /**
+     * Apply {@code edits} to {@code content}. The text of literal edits must use LF line endings.
+     */
+    static Result apply(String content, List<Edit> edits) throws EditException {
+        List<List<Match>> matchesByEdit = new ArrayList<>(edits.size());
+        for (int i = 0; i < edits.size(); i++) {
+            matchesByEdit.add(new ArrayList<>());
+        }
+
+        findLiterals(content, edits, matchesByEdit);
+        for (int i = 0; i < edits.size(); i++) {
+            Edit edit = edits.get(i);
+            if (edit.useRegex()) {
+                findRegex(content, i, edit, matchesByEdit.get(i));
+            }
+            if (matchesByEdit.get(i).isEmpty()) {
+                throw new EditException(EditException.Reason.NOT_FOUND, i, "Could not find text to replace");
+            }
+        }
+
+        List<Match> all = new ArrayList<>();
+        matchesByEdit.forEach(all::addAll);
+        all.sort(Comparator.comparingInt(Match::start).thenComparingInt(Match::end));
+
+        StringBuilder result = new StringBuilder(content.length());
+        int position = 0;
+        Match previous = null;
+        for (Match match : all) {
+            if (previous != null && (match.start() < previous.end() || match.start() == previous.start())) {
+                throw new EditException(EditException.Reason.OVERLAP, match.edit(),
+                        "Edit " + (match.edit() + 1) + " overlaps edit " + (previous.edit() + 1));
+            }
+            result.append(content, position, match.start()).append(match.replacement());
+            position = match.end();
+            previous = match;
+        }
+        result.append(content, position, content.length());
+
+        return new Result(result.toString(), matchesByEdit);
+    }
+
+    private static void findRegex(String content, int index, Edit edit, List<Match> matches) throws EditException {
+        Matcher matcher;
+        try {
+            matcher = Pattern.compile(edit.oldText(), Pattern.DOTALL).matcher(content);
+        } catch (PatternSyntaxException e) {
+            throw new EditException(EditException.Reason.INVALID_PATTERN, index, e.getMessage());
+        }
+        if (!matcher.find()) {
+            return;
+        }
+        // appendReplacement expands group references; everything before the match start is the copied prefix
+        StringBuilder expanded = new StringBuilder();
+        matcher.appendReplacement(expanded, edit.newText());
+        String replacement = expanded.substring(matcher.start());
+        // A regex that replaces its match by the same text is reported as not found, as before
+        if (!replacement.equals(matcher.group())) {
+            matches.add(new Match(index, matcher.start(), matcher.end(), replacement));
+        }
+    }
+
+    /**
+     * Locate all literal edits with one Aho-Corasick scan. Occurrences of one text are taken left to right without
+     * overlapping each other, the same ones {@link String#replace} would replace in the content with normalized line
+     * endings; their offsets are those in {@code content}.
+     */
+    private static void findLiterals(String content, List<Edit> edits, List<List<Match>> matchesByEdit) {
+        // Edits with the same text share a pattern, and will then be reported as overlapping
+        Map<String, List<Integer>> editsByText = new LinkedHashMap<>();
+        for (int i = 0; i < edits.size(); i++) {
+            Edit edit = edits.get(i);
+            if (!edit.useRegex() && !edit.oldText().isEmpty()) {
+                editsByText.computeIfAbsent(edit.oldText(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        if (editsByText.isEmpty()) {
+            return;
+        }
+
+        String[] patterns = editsByText.keySet().toArray(new String[0]);
+        Automaton automaton = new Automaton(patterns);
+        int[] nextFree = new int[patterns.length];
+        List<List<Integer>> patternEdits = new ArrayList<>(editsByText.values());
+
+        // Offsets in the normalized content, whose CRLF are one char, map back to the content only if it has any CR
+        int[] originalOffsets = content.indexOf('\r') >= 0 ? new int[content.length()] : null;
+        int normalized = 0;
+        int state = 0;
+        for (int i = 0; i < content.length(); i++) {
+            int charStart = i;
+            char c = content.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < content.length() && content.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                c = '\n';
+            }
+            if (originalOffsets != null) {
+                originalOffsets[normalized] = charStart;
+            }
+            normalized++;
+
+            state = automaton.next(state, c);
+            for (int node = automaton.outputNode(state); node > 0; node = automaton.dictionaryLink[node]) {
+                int pattern = automaton.pattern[node];
+                int start = normalized - patterns[pattern].length();
+                if (start < nextFree[pattern]) {
+                    continue;
+                }
+                nextFree[pattern] = normalized;
+                int originalStart = originalOffsets != null ? originalOffsets[start] : start;
+                for (int edit : patternEdits.get(pattern)) {
+                    matchesByEdit.get(edit).add(new Match(edit, originalStart, i + 1, edits.get(edit).newText()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton over chars, with failure links and dictionary suffix links.
+     */
+    private static final class Automaton {
+
+        private final Map<Long, Integer> transitions = new HashMap<>();
+        private final int[] failure;
+        private final int[] pattern;
+        private final int[] dictionaryLink;
+
+        Automaton(String[] patterns) {
+            int maxNodes = 1;
+            for (String p : patterns) {
+                maxNodes += p.length();
+            }
+            int[] nodePattern = new int[maxNodes];
+            Arrays.fill(nodePattern, -1);
+            int nodes = 1;
+            for (int p = 0; p < patterns.length; p++) {
+                int node = 0;
+                for (int i = 0; i < patterns[p].length(); i++) {
+                    long key = key(node, patterns[p].charAt(i));
+                    Integer child = transitions.get(key);
+                    if (child == null) {
+                        child = nodes++;
+                        transitions.put(key, child);
+                    }
+                    node = child;
+                }
+                nodePattern[node] = p;
+            }
+
+            pattern = Arrays.copyOf(nodePattern, nodes);
+            failure = new int[nodes];
+            dictionaryLink = new int[nodes];
+
+            // Breadth-first, so the failure target of a node is always complete before the node itself
+            List<List<long[]>> children = childrenByNode(nodes);
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (long[] edge : children.get(0)) {
+                queue.add((int) edge[1]);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (long[] edge : children.get(node)) {
+                    char c = (char) edge[0];
+                    int child = (int) edge[1];
+                    int fallback = failure[node];
+                    while (fallback > 0 && !transitions.containsKey(key(fallback, c))) {
+                        fallback = failure[fallback];
+                    }
+                    Integer target = transitions.get(key(fallback, c));
+                    failure[child] = target != null ? target : 0;
+                    dictionaryLink[child] = pattern[failure[child]] >= 0
+                            ? failure[child]
+                            : dictionaryLink[failure[child]];
+                    queue.add(child);
+                }
+            }
+        }
+
+        int next(int state, char c) {
+            while (true) {
+                Integer target = transitions.get(key(state, c));
+                if (target != null) {
+                    return target;
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = failure[state];
+            }
+        }
+
+        /**
+         * The deepest node ending at {@code state} that completes a pattern, or 0.
+         */
+        int outputNode(int state) {
+            return pattern[state] >= 0 ? state : dictionaryLink[state];
+        }
+
+        private List<List<long[]>> childrenByNode(int nodes) {
+            List<List<long[]>> children = new ArrayList<>(nodes);
+            for (int i = 0; i < nodes; i++) {
+                children.add(new ArrayList<>());
+            }
+            transitions.forEach((key, child) -> children.get((int) (key >>> 16)).add(new long[]{key & 0xFFFF, child}));
+            return children;
+        }
+
+        private static long key(int node, char c) {
+            return ((long) node << 16) | c;
+        }
+    }
+}
@@ -1,27 +1,37 @@
 package com.mcp.tools.files;
 
 import com.mcp.tools.AbstractToolService;
+import com.mcp.tools.fs.AtomicFileWriter;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class EditFileService extends AbstractToolService {
 
     public static final String OLD_TEXT = "oldText";
     public static final String NEW_TEXT = "newText";
+    private static final int MAX_REPORTED_LOCATIONS = 20;
+
+    private final AtomicFileWriter fileWriter;
+
+    public EditFileService(AtomicFileWriter fileWriter) {
+        this.fileWriter = fileWriter;
+    }
 
     @Tool(description = """
     Perform line-by-line edits on a text file, replacing specified sequences with new content.
@@ -31,20 +41,45 @@ public class EditFileService extends AbstractToolService {
     1. JSON object: {"oldText": "text to replace", "newText": "replacement text"}
     2. JSON array: [{"oldText": "text1", "newText": "replacement1"}, {"oldText": "text2", "newText": "replacement2"}]
     3. Simple string: "oldText----newText", using '----' as the separator
+
+    All edits are matched against the original file and applied together: if one edit is not found or two edits
+    overlap, nothing is changed.
     """)
 
     public String editFile(
             @ToolParam(description = "The path to the file to edit") String path,
             @ToolParam(description = "List of edits to apply, each containing oldText and newText") String edits,
-            @ToolParam(description = "If true, only show diff without changing the file", required = false) Boolean dryRun
+            @ToolParam(description = "If true, only show diff without changing the file", required = false) Boolean dryRun,
+            @ToolParam(description = "Number of unchanged lines shown around each change in the diff (default: 3)", required = false) Integer contextLines,
+            @ToolParam(description = "Durability of the write: 'none', 'data' (fsync content, default) or 'full' (fsync content and directory)", required = false) String durability
     ) {
+        // Serialize edits of the same file, from reading it to writing it back
+        Lock lock;
+        try {
+            lock = fileWriter.lockFor(Paths.get(path));
+        } catch (InvalidPathException e) {
+            return errorMessage("Invalid path: " + e.getMessage());
+        }
+        lock.lock();
+        try {
+            return applyEdits(path, edits, dryRun, contextLines, durability);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String applyEdits(String path, String edits, Boolean dryRun, Integer contextLines, String durability) {
         Map<String, Object> result = new HashMap<>();
 
         // Default dryRun to false if not provided
         boolean isDryRun = dryRun != null && dryRun;
+        int contextLinesValue = contextLines != null ? contextLines : LineDiff.DEFAULT_CONTEXT_LINES;
 
         try {
             Path filePath = Paths.get(path);
+            AtomicFileWriter.Durability durabilityValue = durability != null
+                    ? AtomicFileWriter.Durability.parse(durability)
+                    : fileWriter.defaultDurability();
 
             if (!Files.exists(filePath)) {
                 result.put(SUCCESS, false);
@@ -58,9 +93,9 @@ public class EditFileService extends AbstractToolService {
                 return mapper.writeValueAsString(result);
             }
 
-            // Read the original file content
+            // Read the original file content; edits keep its line endings
             String originalContent = Files.readString(filePath);
-            String newContent = originalContent;
+            String lineEnding = lineEnding(originalContent);
 
             // Debug the received edits parameter
             result.put("debug_received_edits", edits);
@@ -71,8 +106,7 @@ public class EditFileService extends AbstractToolService {
                 return mapper.writeValueAsString(result);
             }
 
-            // Apply each edit
-            List<String> appliedEdits = new ArrayList<>();
+            List<EditBatch.Edit> batch = new ArrayList<>();
             for (Map<String, String> edit : editsList) {
                 String oldText = edit.get(OLD_TEXT);
                 String newText = edit.get(NEW_TEXT);
@@ -84,45 +118,46 @@ public class EditFileService extends AbstractToolService {
                     return mapper.writeValueAsString(result);
                 }
 
-                if (useRegex) {
-                    try {
-                        Pattern pattern = Pattern.compile(oldText, Pattern.DOTALL);
-                        String tempContent = pattern.matcher(newContent).replaceFirst(newText);
-                        
-                        // Only count it as applied if a change was made
-                        if (!tempContent.equals(newContent)) {
-                            newContent = tempContent;
-                            appliedEdits.add(oldText);
-                        } else {
-                            reportTextNotFound(oldText, originalContent, path, result);
-                            return mapper.writeValueAsString(result);
-                        }
-                    } catch (PatternSyntaxException e) {
+                // Literal text matches any line ending, and its replacement takes the file's
+                batch.add(useRegex
+                        ? new EditBatch.Edit(oldText, newText, true)
+                        : new EditBatch.Edit(normalizeLineEndings(oldText),
+                                normalizeLineEndings(newText).replace("\n", lineEnding), false));
+            }
+
+            // Locate every edit in the original content and apply them all at once, or none of them
+            EditBatch.Result applied;
+            try {
+                applied = EditBatch.apply(originalContent, batch);
+            } catch (EditBatch.EditException e) {
+                String oldText = editsList.get(e.edit()).get(OLD_TEXT);
+                switch (e.reason()) {
+                    case NOT_FOUND -> reportTextNotFound(oldText, originalContent, path, result);
+                    case INVALID_PATTERN -> {
                         result.put(SUCCESS, false);
                         result.put(ERROR, "Invalid regex pattern: " + e.getMessage());
-                        return mapper.writeValueAsString(result);
                     }
-                } else {
-                    // Simple text replacement (normalize line endings)
-                    String normalizedContent = normalizeLineEndings(newContent);
-                    String normalizedOldText = normalizeLineEndings(oldText);
-                    
-                    if (!normalizedContent.contains(normalizedOldText)) {
-                        reportTextNotFound(oldText, originalContent, path, result);
-                        return mapper.writeValueAsString(result);
+                    case OVERLAP -> {
+                        result.put(SUCCESS, false);
+                        result.put(ERROR, e.getMessage() + ", no edit was applied");
                     }
-                    
-                    newContent = normalizedContent.replace(normalizedOldText, newText);
-                    appliedEdits.add(oldText);
                 }
+                result.put("failedEdit", e.edit());
+                return mapper.writeValueAsString(result);
+            }
+            String newContent = applied.content();
+
+            List<String> appliedEdits = new ArrayList<>();
+            for (Map<String, String> edit : editsList) {
+                appliedEdits.add(edit.get(OLD_TEXT));
             }
 
             // Generate diff
-            String diff = generateDiff(path, originalContent, newContent);
+            String diff = generateDiff(path, originalContent, newContent, contextLinesValue);
 
             // Write changes to file if not a dry run
             if (!isDryRun && !originalContent.equals(newContent)) {
-                Files.writeString(filePath, newContent);
+                fileWriter.write(filePath, newContent.getBytes(StandardCharsets.UTF_8), durabilityValue);
             }
 
             result.put(SUCCESS, true);
@@ -130,16 +165,62 @@ public class EditFileService extends AbstractToolService {
             result.put("dryRun", isDryRun);
             result.put("editsApplied", appliedEdits.size());
             result.put("appliedEdits", appliedEdits);
+            result.put("editLocations", describeLocations(originalContent, applied.matchesByEdit()));
 
             return mapper.writeValueAsString(result);
 
         } catch (IOException e) {
             return errorMessage("Failed to edit file: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return errorMessage(e.getMessage());
         } catch (Exception e) {
             return errorMessage("Unexpected error: " + e.getMessage());
         }
     }
 
+    /**
+     * Where each edit matched in the original content: occurrence count, and offset and line of the first occurrences
+     */
+    private List<Map<String, Object>> describeLocations(String content, List<List<EditBatch.Match>> matchesByEdit) {
+        List<EditBatch.Match> reported = new ArrayList<>();
+        for (List<EditBatch.Match> matches : matchesByEdit) {
+            reported.addAll(matches.subList(0, Math.min(matches.size(), MAX_REPORTED_LOCATIONS)));
+        }
+        reported.sort(Comparator.comparingInt(EditBatch.Match::start));
+
+        // Line numbers in one pass over the content
+        Map<EditBatch.Match, Integer> lines = new HashMap<>();
+        int line = 1;
+        int position = 0;
+        for (EditBatch.Match match : reported) {
+            for (; position < match.start(); position++) {
+                char c = content.charAt(position);
+                if (c == '\n' || (c == '\r' && (position + 1 == content.length() || content.charAt(position + 1) != '\n'))) {
+                    line++;
+                }
+            }
+            lines.put(match, line);
+        }
+
+        List<Map<String, Object>> locations = new ArrayList<>();
+        for (int i = 0; i < matchesByEdit.size(); i++) {
+            List<EditBatch.Match> matches = matchesByEdit.get(i);
+            List<Integer> offsets = new ArrayList<>();
+            List<Integer> matchLines = new ArrayList<>();
+            for (EditBatch.Match match : matches.subList(0, Math.min(matches.size(), MAX_REPORTED_LOCATIONS))) {
+                offsets.add(match.start());
+                matchLines.add(lines.get(match));
+            }
+            Map<String, Object> location = new HashMap<>();
+            location.put("edit", i);
+            location.put("occurrences", matches.size());
+            location.put("offsets", offsets);
+            location.put("lines", matchLines);
+            locations.add(location);
+        }
+        return locations;
+    }
+
     /**
      * Parse edits in various formats into a unified list.
      */
@@ -233,6 +314,22 @@ public class EditFileService extends AbstractToolService {
         }
     }
 
+    /**
+     * The first line ending in {@code text}, LF if it has none
+     */
+    private static String lineEnding(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                return "\n";
+            }
+            if (c == '\r') {
+                return i + 1 < text.length() && text.charAt(i + 1) == '\n' ? "\r\n" : "\r";
+            }
+        }
+        return "\n";
+    }
+
     /**
      * Normalize line endings to make replacements more consistent
      */
@@ -244,37 +341,23 @@ public class EditFileService extends AbstractToolService {
     }
 
     /**
-     * Generate a git-style diff between original and modified content
+     * Generate a git-style diff between original and modified content, showing only the changed hunks
      */
-    private String generateDiff(String filePath, String originalContent, String modifiedContent) {
+    private String generateDiff(String filePath, String originalContent, String modifiedContent, int contextLines) {
         // Normalize line endings
         originalContent = normalizeLineEndings(originalContent);
         modifiedContent = normalizeLineEndings(modifiedContent);
-        
-        // Simple line-based diff implementation
+
         StringBuilder diff = new StringBuilder();
         diff.append("--- ").append(filePath).append("\t(original)\n");
         diff.append("+++ ").append(filePath).append("\t(modified)\n");
 
-        String[] originalLines = originalContent.split("\n");
-        String[] modifiedLines = modifiedContent.split("\n");
-
         if (!originalContent.equals(modifiedContent)) {
-            diff.append("@@ -1,").append(originalLines.length).append(" +1,").append(modifiedLines.length).append(" @@\n");
-
-            // Show removed lines (original content)
-            for (String line : originalLines) {
-                diff.append("-").append(line).append("\n");
-            }
-
-            // Show added lines (modified content)
-            for (String line : modifiedLines) {
-                diff.append("+").append(line).append("\n");
-            }
+            diff.append(LineDiff.unified(originalContent, modifiedContent, contextLines));
         } else {
             diff.append("No changes\n");
         }
 
         return diff.toString();
     }
-}
\ No newline at end of file
+}
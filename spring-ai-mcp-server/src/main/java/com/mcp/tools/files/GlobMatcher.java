@@ -0,0 +1,86 @@
+package com.mcp.tools.files;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+
+/**
+ * A search pattern compiled once and classified by what it needs to look at.
+ * <p>
+ * Plain names ({@code pom.xml}) and plain suffix globs ({@code *.java}) are answered with a string comparison on
+ * the file name. Other globs are evaluated only against what they can match: the file name when the glob has no
+ * separator, the relative path when it has one, and both only when needed ({@code **} or alternatives).
+ */
+final class GlobMatcher {
+
+    private static final String GLOB_PREFIX = "glob:";
+    private static final String GLOB_METACHARS = "*?[]{}\\";
+    private static final boolean CASE_INSENSITIVE = FileSystems.getDefault().getSeparator().equals("\\");
+
+    private enum Kind { EXACT, SUFFIX, NAME, PATH, BOTH }
+
+    private final Kind kind;
+    private final String literal;
+    private final PathMatcher pathMatcher;
+
+    private GlobMatcher(Kind kind, String literal, PathMatcher pathMatcher) {
+        this.kind = kind;
+        this.literal = literal;
+        this.pathMatcher = pathMatcher;
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     */
+    static GlobMatcher compile(String pattern) {
+        String glob = pattern.startsWith(GLOB_PREFIX) ? pattern.substring(GLOB_PREFIX.length()) : pattern;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(GLOB_PREFIX + glob);
+
+        boolean hasSeparator = glob.contains("/");
+        if (!hasSeparator && !containsAny(glob, GLOB_METACHARS)) {
+            return new GlobMatcher(Kind.EXACT, glob, matcher);
+        }
+        if (!hasSeparator && glob.startsWith("*") && !containsAny(glob.substring(1), GLOB_METACHARS)) {
+            return new GlobMatcher(Kind.SUFFIX, glob.substring(1), matcher);
+        }
+        if (glob.contains("**") || (hasSeparator && glob.contains("{"))) {
+            return new GlobMatcher(Kind.BOTH, null, matcher);
+        }
+        return new GlobMatcher(hasSeparator ? Kind.PATH : Kind.NAME, null, matcher);
+    }
+
+    /**
+     * @param relativePath the path relative to the search base
+     * @param fileName     the last element of the path, or {@code null} for the base itself
+     */
+    boolean matches(Path relativePath, Path fileName) {
+        switch (kind) {
+            case EXACT:
+                return fileName != null && (CASE_INSENSITIVE
+                        ? fileName.toString().equalsIgnoreCase(literal)
+                        : fileName.toString().equals(literal));
+            case SUFFIX:
+                if (fileName == null) {
+                    return false;
+                }
+                String name = fileName.toString();
+                return name.length() >= literal.length()
+                        && name.regionMatches(CASE_INSENSITIVE, name.length() - literal.length(), literal, 0, literal.length());
+            case NAME:
+                return fileName != null && pathMatcher.matches(fileName);
+            case PATH:
+                return pathMatcher.matches(relativePath);
+            default:
+                return pathMatcher.matches(relativePath) || (fileName != null && pathMatcher.matches(fileName));
+        }
+    }
+
+    private static boolean containsAny(String text, String chars) {
+        for (int i = 0; i < text.length(); i++) {
+            if (chars.indexOf(text.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
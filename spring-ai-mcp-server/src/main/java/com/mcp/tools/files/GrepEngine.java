@@ -0,0 +1,171 @@
+package com.mcp.tools.files;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Searches files in parallel on virtual threads while keeping the output in file order.
+ * <p>
+ * Files are pulled lazily from the stream into a sliding window of in-flight scans. Results are consumed from the
+ * head of the window, so the output is the same as a sequential scan, and everything still in flight is cancelled
+ * as soon as the result limit is reached.
+ */
+class GrepEngine {
+
+    static final int MAX_MATCHES_SHOWN_PER_FILE = 5;
+
+    private static final int WINDOW_SIZE = Runtime.getRuntime().availableProcessors() * 4;
+    private static final String CONTEXT_MARKER = "→ ";
+    private static final String CONTEXT_INDENT = "  ";
+
+    /**
+     * Matches found in one file: the match count and the formatted first matches.
+     */
+    record FileMatches(Path file, int count, List<String> shown) {
+
+        FileMatches truncate(int maxCount) {
+            if (count <= maxCount) {
+                return this;
+            }
+            return new FileMatches(file, maxCount, shown.subList(0, Math.min(shown.size(), maxCount)));
+        }
+    }
+
+    private GrepEngine() {
+    }
+
+    /**
+     * Search {@code files} in order and return the files with matches, stopping once {@code maxResults} matches
+     * have been collected. The last file is truncated so the total never exceeds the limit.
+     *
+     * @param literal a string every match contains, used to skip ahead in the raw bytes, or {@code null}
+     */
+    static List<FileMatches> search(Stream<Path> files, Pattern pattern, String literal, int contextLines,
+                                    int maxResults) throws InterruptedException {
+        byte[] needle = literal != null ? ByteSource.needle(literal) : null;
+        List<FileMatches> results = new ArrayList<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Deque<Future<FileMatches>> inFlight = new ArrayDeque<>();
+        Iterator<Path> pending = files.iterator();
+        int totalMatches = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                while (totalMatches < maxResults) {
+                    while (inFlight.size() < WINDOW_SIZE && pending.hasNext()) {
+                        Path file = pending.next();
+                        inFlight.add(executor.submit(() -> scanFile(file, pattern, needle, contextLines, maxResults, cancelled)));
+                    }
+                    if (inFlight.isEmpty()) {
+                        break;
+                    }
+
+                    FileMatches matches = inFlight.poll().get();
+                    if (matches != null && matches.count() > 0) {
+                        matches = matches.truncate(maxResults - totalMatches);
+                        totalMatches += matches.count();
+                        results.add(matches);
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                cancelled.set(true);
+                inFlight.forEach(future -> future.cancel(true));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Scan the raw bytes of one file. When a literal needle is known, the scan jumps from one needle occurrence to
+     * the next and only the lines around it are decoded; otherwise each line is decoded and matched in turn.
+     *
+     * @return the matches, or {@code null} when the file is binary or cannot be read
+     */
+    static FileMatches scanFile(Path file, Pattern pattern, byte[] needle, int contextLines, int maxCount,
+                                AtomicBoolean cancelled) {
+        String fileName = String.valueOf(file.getFileName());
+        List<String> shown = new ArrayList<>();
+        int count = 0;
+
+        try (ByteSource source = ByteSource.open(file)) {
+            if (source.isBinary()) {
+                return null;
+            }
+
+            long size = source.size();
+            long position = 0;
+            long lineNumber = 1;
+            while (position < size && count < maxCount) {
+                if (cancelled.get()) {
+                    return null;
+                }
+
+                long lineStart = position;
+                if (needle != null) {
+                    long hit = source.find(needle, position);
+                    if (hit < 0) {
+                        break;
+                    }
+                    lineStart = source.lineStart(hit, position);
+                    lineNumber += source.countLineFeeds(position, lineStart);
+                }
+                long lineEnd = source.lineEnd(lineStart);
+                String line = source.decodeLine(lineStart, lineEnd);
+
+                if (pattern.matcher(line).find()) {
+                    count++;
+                    if (shown.size() < MAX_MATCHES_SHOWN_PER_FILE) {
+                        shown.add(formatMatch(source, fileName, lineNumber, lineStart, lineEnd, line, contextLines));
+                    }
+                }
+                position = lineEnd + 1;
+                lineNumber++;
+            }
+        } catch (IOException | UncheckedIOException | InternalError e) {
+            // Skip files that can't be read, or that were truncated while mapped or read
+            return null;
+        }
+        return new FileMatches(file, count, shown);
+    }
+
+    private static String formatMatch(ByteSource source, String fileName, long lineNumber, long lineStart,
+                                      long lineEnd, String line, int contextLines) {
+        StringBuilder match = new StringBuilder();
+        match.append(fileName).append(":").append(lineNumber).append(": ");
+        if (contextLines == 0) {
+            return match.append(line).toString();
+        }
+
+        Deque<String> before = new ArrayDeque<>(contextLines);
+        long start = lineStart;
+        for (int i = 0; i < contextLines && start > 0; i++) {
+            long end = start - 1;
+            start = source.lineStart(end, 0);
+            before.addFirst(source.decodeLine(start, end));
+        }
+        before.forEach(previous -> match.append(CONTEXT_INDENT).append(previous).append("\n"));
+        match.append(CONTEXT_MARKER).append(line).append("\n");
+
+        long end = lineEnd;
+        for (int i = 0; i < contextLines && end + 1 < source.size(); i++) {
+            start = end + 1;
+            end = source.lineEnd(start);
+            match.append(CONTEXT_INDENT).append(source.decodeLine(start, end)).append("\n");
+        }
+        if (end + 1 < source.size()) {
+            match.append("...");
+        }
+        return match.toString();
+    }
+}
@@ -0,0 +1,242 @@
+package com.mcp.tools.files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line diff producing unified hunks, based on Myers' O(ND) algorithm in its linear space variant: the middle snake
+ * of each sub-problem is found by searching from both ends, then both halves are solved recursively.
+ * <p>
+ * Lines are interned to integer ids first, so the inner loops compare ints instead of strings. A last line without a
+ * trailing line feed is a different line than the same text with one, and is reported with the usual
+ * {@code \ No newline at end of file} marker.
+ */
+final class LineDiff {
+
+    static final int DEFAULT_CONTEXT_LINES = 3;
+
+    private static final String NO_NEWLINE_MARKER = "\\ No newline at end of file\n";
+
+    private final String[] originalLines;
+    private final String[] modifiedLines;
+    private final boolean originalMissingNewline;
+    private final boolean modifiedMissingNewline;
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] removed;
+    private final boolean[] added;
+
+    private LineDiff(String original, String modified) {
+        originalLines = splitLines(original);
+        modifiedLines = splitLines(modified);
+        originalMissingNewline = !original.isEmpty() && !original.endsWith("\n");
+        modifiedMissingNewline = !modified.isEmpty() && !modified.endsWith("\n");
+
+        Map<String, Integer> ids = new HashMap<>();
+        a = intern(originalLines, originalMissingNewline, ids);
+        b = intern(modifiedLines, modifiedMissingNewline, ids);
+        removed = new boolean[a.length];
+        added = new boolean[b.length];
+        compare(0, a.length, 0, b.length);
+    }
+
+    /**
+     * Unified diff of two texts with {@code contextLines} unchanged lines around each change, without the file
+     * header. Empty when both texts are equal.
+     */
+    static String unified(String original, String modified, int contextLines) {
+        if (original.equals(modified)) {
+            return "";
+        }
+        return new LineDiff(original, modified).format(Math.max(contextLines, 0));
+    }
+
+    private static String[] splitLines(String text) {
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        String[] lines = text.split("\n", -1);
+        // A trailing line feed terminates the last line, it does not start an empty one
+        return text.endsWith("\n") ? Arrays.copyOf(lines, lines.length - 1) : lines;
+    }
+
+    private static int[] intern(String[] lines, boolean missingNewline, Map<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            // The unterminated last line must not match a terminated one
+            String key = missingNewline && i == lines.length - 1 ? lines[i] + "\u0000" : lines[i];
+            result[i] = ids.computeIfAbsent(key, k -> ids.size());
+        }
+        return result;
+    }
+
+    /**
+     * Mark the removed lines of {@code a[aLo, aHi)} and the added lines of {@code b[bLo, bHi)}.
+     */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j++) {
+                added[j] = true;
+            }
+            return;
+        }
+        if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i++) {
+                removed[i] = true;
+            }
+            return;
+        }
+
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        compare(aLo, snake[0], bLo, snake[1]);
+        compare(snake[2], aHi, snake[3], bHi);
+    }
+
+    /**
+     * Start and end ({@code {x, y, u, v}}) of the middle snake of a shortest edit script between {@code a[aLo, aHi)}
+     * and {@code b[bLo, bHi)}. Both ranges are non-empty and differ in their first and last lines.
+     */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        // forward[k]: furthest x on diagonal k from the start, backward[k]: furthest x on diagonal k from the end
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1]
+                        : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[offset + reverseK] >= n) {
+                    return new int[]{aLo + startX, bLo + startY, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1]
+                        : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+                    return new int[]{aHi - x, bHi - y, aHi - startX, bHi - startY};
+                }
+            }
+        }
+        // Unreachable: the searches always meet within (n + m + 1) / 2 steps
+        throw new IllegalStateException("No middle snake found");
+    }
+
+    private String format(int contextLines) {
+        List<int[]> changes = changes();
+        StringBuilder diff = new StringBuilder();
+
+        int first = 0;
+        while (first < changes.size()) {
+            // Changes closer than twice the context share a hunk
+            int last = first;
+            while (last + 1 < changes.size() && changes.get(last + 1)[0] - changes.get(last)[1] <= 2 * contextLines) {
+                last++;
+            }
+
+            int[] firstChange = changes.get(first);
+            int[] lastChange = changes.get(last);
+            int aStart = Math.max(0, firstChange[0] - contextLines);
+            int aEnd = Math.min(a.length, lastChange[1] + contextLines);
+            int bStart = firstChange[2] - (firstChange[0] - aStart);
+            int bEnd = lastChange[3] + (aEnd - lastChange[1]);
+
+            diff.append("@@ -").append(range(aStart, aEnd - aStart))
+                    .append(" +").append(range(bStart, bEnd - bStart)).append(" @@\n");
+
+            int i = aStart;
+            for (int c = first; c <= last; c++) {
+                int[] change = changes.get(c);
+                for (; i < change[0]; i++) {
+                    appendLine(diff, ' ', originalLines, i, originalMissingNewline);
+                }
+                for (; i < change[1]; i++) {
+                    appendLine(diff, '-', originalLines, i, originalMissingNewline);
+                }
+                for (int j = change[2]; j < change[3]; j++) {
+                    appendLine(diff, '+', modifiedLines, j, modifiedMissingNewline);
+                }
+            }
+            for (; i < aEnd; i++) {
+                appendLine(diff, ' ', originalLines, i, originalMissingNewline);
+            }
+            first = last + 1;
+        }
+        return diff.toString();
+    }
+
+    /**
+     * Consecutive changed regions as {@code {aStart, aEnd, bStart, bEnd}}, in order.
+     */
+    private List<int[]> changes() {
+        List<int[]> changes = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if ((i < a.length && removed[i]) || (j < b.length && added[j])) {
+                int aStart = i;
+                int bStart = j;
+                while (i < a.length && removed[i]) {
+                    i++;
+                }
+                while (j < b.length && added[j]) {
+                    j++;
+                }
+                changes.add(new int[]{aStart, i, bStart, j});
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return changes;
+    }
+
+    private static String range(int start, int length) {
+        // An empty range names the line before it, as in diff -u
+        int line = length == 0 ? start : start + 1;
+        return length == 1 ? String.valueOf(line) : line + "," + length;
+    }
+
+    private static void appendLine(StringBuilder diff, char prefix, String[] lines, int index, boolean missingNewline) {
+        diff.append(prefix).append(lines[index]).append('\n');
+        if (missingNewline && index == lines.length - 1) {
+            diff.append(NO_NEWLINE_MARKER);
+        }
+    }
+}
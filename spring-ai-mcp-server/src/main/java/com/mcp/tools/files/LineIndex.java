@@ -0,0 +1,88 @@
+package com.mcp.tools.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Sparse index of line start offsets: the byte offset of every {@value #LINES_PER_CHECKPOINT}th line.
+ * <p>
+ * Seeking to a line costs one array lookup plus scanning at most {@value #LINES_PER_CHECKPOINT} lines. The index is
+ * only valid for the file content it was built from, identified by modification time and size.
+ */
+final class LineIndex {
+
+    static final int LINES_PER_CHECKPOINT = 1024;
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long lastModified;
+    private final long size;
+    private final long[] checkpoints;
+    private final long lineCount;
+
+    private LineIndex(long lastModified, long size, long[] checkpoints, long lineCount) {
+        this.lastModified = lastModified;
+        this.size = size;
+        this.checkpoints = checkpoints;
+        this.lineCount = lineCount;
+    }
+
+    static LineIndex build(FileChannel channel, long lastModified) throws IOException {
+        long size = channel.size();
+        long[] checkpoints = new long[16];
+        int checkpointCount = 1;
+        long line = 0;
+        long position = 0;
+        byte last = '\n';
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    line++;
+                    if (line % LINES_PER_CHECKPOINT == 0) {
+                        if (checkpointCount == checkpoints.length) {
+                            checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+                        }
+                        checkpoints[checkpointCount++] = position + i + 1;
+                    }
+                }
+            }
+            if (read > 0) {
+                last = buffer.get(read - 1);
+            }
+            position += read;
+        }
+        long lineCount = line + (last != '\n' ? 1 : 0);
+        return new LineIndex(lastModified, size, Arrays.copyOf(checkpoints, checkpointCount), lineCount);
+    }
+
+    boolean isValidFor(long lastModified, long size) {
+        return this.lastModified == lastModified && this.size == size;
+    }
+
+    long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Byte offset of the closest indexed line at or before {@code line} (0-based).
+     */
+    long checkpointOffset(long line) {
+        int checkpoint = (int) Math.min(line / LINES_PER_CHECKPOINT, checkpoints.length - 1);
+        return checkpoints[checkpoint];
+    }
+
+    /**
+     * The 0-based line number at {@link #checkpointOffset(long)}.
+     */
+    long checkpointLine(long line) {
+        return Math.min(line / LINES_PER_CHECKPOINT, checkpoints.length - 1) * LINES_PER_CHECKPOINT;
+    }
+}
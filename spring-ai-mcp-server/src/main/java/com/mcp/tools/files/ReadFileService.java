@@ -6,22 +6,50 @@ import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Service
 public class ReadFileService extends AbstractToolService {
 
+    public static final int MAX_WINDOW_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_CACHED_LINE_INDEXES = 64;
+
+    private final Map<Path, LineIndex> lineIndexes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, LineIndex> eldest) {
+            return size() > MAX_CACHED_LINE_INDEXES;
+        }
+    };
+
     @Tool(description = """
-    Read and return the full content of a file. 
+    Read and return the content of a file.
     Supports various text encodings and delivers detailed error messages for read failures.
     Ideal for examining the contents of a single file.
+    For large files read a window: by lines (startLine/lineCount), by bytes (byteOffset/byteLength)
+    or the last lines (tailLines). Without a window, files larger than 4 MB are truncated.
+    A line window ends at a line boundary; only a line longer than 4 MB is returned in part (partialLine is set),
+    continue it with byteOffset=nextByteOffset.
     """)
 
-    public String readFile(@ToolParam(description = "The full path to the file") String fullPathFile) {
+    public String readFile(@ToolParam(description = "The full path to the file") String fullPathFile,
+                           @ToolParam(description = "First line to return, starting at 1", required = false) Integer startLine,
+                           @ToolParam(description = "Number of lines to return", required = false) Integer lineCount,
+                           @ToolParam(description = "Byte offset to start reading at", required = false) Long byteOffset,
+                           @ToolParam(description = "Number of bytes to read", required = false) Integer byteLength,
+                           @ToolParam(description = "Return only the last N lines of the file", required = false) Integer tailLines) {
         Map<String, Object> result = new HashMap<>();
 
         try {
@@ -39,14 +67,36 @@ public class ReadFileService extends AbstractToolService {
                 return mapper.writeValueAsString(result);
             }
 
-            // Try to detect the file encoding (simplified here, uses default charset)
-            String content = Files.readString(path);
-
-            result.put("content", content);
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attrs.size();
             result.put("path", fullPathFile);
-            result.put("size", Files.size(path));
+            result.put("size", size);
 
-            return successMessage(result);
+            if (tailLines == null && startLine == null && lineCount == null && byteOffset == null && byteLength == null
+                    && size <= MAX_WINDOW_BYTES) {
+                // Try to detect the file encoding (simplified here, uses default charset)
+                try (Reader content = Files.newBufferedReader(path)) {
+                    return successResult(writer -> writer.fields(result).field("content", content));
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                Window window;
+                if (tailLines != null) {
+                    window = readTail(channel, path, attrs, Math.max(tailLines, 0), result);
+                } else if (startLine != null || lineCount != null) {
+                    long firstLine = startLine != null ? Math.max(startLine, 1) : 1;
+                    int lines = lineCount != null ? Math.max(lineCount, 0) : Integer.MAX_VALUE;
+                    window = readLines(channel, path, attrs, firstLine, lines, result);
+                } else {
+                    long offset = byteOffset != null ? Math.max(byteOffset, 0) : 0;
+                    int length = byteLength != null ? Math.max(byteLength, 0) : MAX_WINDOW_BYTES;
+                    window = readBytes(channel, size, offset, length, result);
+                }
+                // Decoded straight from the file into the result
+                return successResult(writer -> writer.fields(result)
+                        .field("content", reader(channel, window.start(), window.end())));
+            }
 
         } catch (IOException e) {
             return errorMessage("Failed to read file: " + e.getMessage());
@@ -54,4 +104,232 @@ public class ReadFileService extends AbstractToolService {
             return errorMessage("Unexpected error: " + e.getMessage());
         }
     }
+
+    /**
+     * Byte range of the content to return.
+     */
+    private record Window(long start, long end) {
+    }
+
+    private Window readBytes(FileChannel channel, long size, long offset, int length, Map<String, Object> result)
+            throws IOException {
+        long start = alignToCharacter(channel, Math.min(offset, size), size);
+        long end = Math.min(size, start + Math.min(length, MAX_WINDOW_BYTES));
+        end = alignToCharacter(channel, end, size);
+        if (end < start) {
+            end = start;
+        }
+
+        result.put("byteOffset", start);
+        result.put("nextByteOffset", end);
+        result.put("eof", end >= size);
+        result.put("truncated", end - start < length && end < size);
+        return new Window(start, end);
+    }
+
+    private Window readLines(FileChannel channel, Path path, BasicFileAttributes attrs, long firstLine, int lines,
+                           Map<String, Object> result) throws IOException {
+        LineIndex index = lineIndex(channel, path, attrs);
+        long size = attrs.size();
+        long lineToSkip = firstLine - 1;
+
+        long start = skipLines(channel, index.checkpointOffset(lineToSkip), lineToSkip - index.checkpointLine(lineToSkip), size);
+        long end = skipLines(channel, start, lines, Math.min(size, start + MAX_WINDOW_BYTES));
+        boolean truncated = end - start >= MAX_WINDOW_BYTES && end < size;
+        long partialLine = 0;
+        if (end < size && end > start && readByte(channel, end - 1) != '\n') {
+            // Cut off mid-line by the byte limit: end at the last whole line, or return part of a line longer than
+            // the window and let the caller continue by byte offset
+            long lineEnd = lastLineEnd(channel, start, end);
+            if (lineEnd > start) {
+                end = lineEnd;
+            } else {
+                end = alignToCharacter(channel, end, size);
+                partialLine = firstLine;
+            }
+        }
+        long linesReturned = countLineFeeds(channel, start, end);
+        if (end == size && end > start && readByte(channel, end - 1) != '\n') {
+            linesReturned++;
+        }
+
+        result.put("startLine", firstLine);
+        result.put("totalLines", index.lineCount());
+        result.put("byteOffset", start);
+        result.put("nextByteOffset", end);
+        result.put("eof", end >= size);
+        result.put("truncated", truncated);
+        result.put("linesReturned", linesReturned);
+        if (partialLine > 0) {
+            result.put("partialLine", partialLine);
+        } else if (end < size) {
+            result.put("nextLine", firstLine + linesReturned);
+        }
+        return new Window(start, end);
+    }
+
+    private Window readTail(FileChannel channel, Path path, BasicFileAttributes attrs, int lines,
+                          Map<String, Object> result) throws IOException {
+        long size = attrs.size();
+        long lowest = Math.max(0, size - MAX_WINDOW_BYTES);
+        // A trailing line feed ends the last line, it does not start a new one
+        long position = size > 0 && readByte(channel, size - 1) == '\n' ? size - 1 : size;
+        long start = lines == 0 ? size : lowest;
+        int found = 0;
+
+        ByteBuffer buffer = ByteBuffer.allocate(LineIndex.BUFFER_SIZE);
+        search:
+        while (lines > 0 && position > lowest) {
+            int chunk = (int) Math.min(LineIndex.BUFFER_SIZE, position - lowest);
+            buffer.clear().limit(chunk);
+            channel.read(buffer, position - chunk);
+            for (int i = chunk - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n' && ++found == lines) {
+                    start = position - chunk + i + 1;
+                    break search;
+                }
+            }
+            position -= chunk;
+        }
+        start = alignToCharacter(channel, start, size);
+
+        result.put("byteOffset", start);
+        result.put("eof", true);
+        result.put("truncated", start == lowest && lowest > 0 && found < lines);
+
+        // Line numbers are only known when the file was already indexed, don't build an index just for them
+        LineIndex index;
+        synchronized (lineIndexes) {
+            index = lineIndexes.get(path);
+        }
+        if (index != null && index.isValidFor(attrs.lastModifiedTime().toMillis(), size)) {
+            result.put("totalLines", index.lineCount());
+        }
+        return new Window(start, size);
+    }
+
+    private LineIndex lineIndex(FileChannel channel, Path path, BasicFileAttributes attrs) throws IOException {
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        synchronized (lineIndexes) {
+            LineIndex index = lineIndexes.get(path);
+            if (index != null && index.isValidFor(lastModified, attrs.size())) {
+                return index;
+            }
+        }
+        LineIndex index = LineIndex.build(channel, lastModified);
+        synchronized (lineIndexes) {
+            lineIndexes.put(path, index);
+        }
+        return index;
+    }
+
+    /**
+     * Offset just after the {@code lines}th line feed at or after {@code position}, or {@code limit}.
+     */
+    private static long skipLines(FileChannel channel, long position, long lines, long limit) throws IOException {
+        if (lines <= 0) {
+            return position;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(LineIndex.BUFFER_SIZE);
+        long remaining = lines;
+        while (position < limit) {
+            buffer.clear().limit((int) Math.min(LineIndex.BUFFER_SIZE, limit - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n' && --remaining == 0) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return limit;
+    }
+
+    /**
+     * Offset just after the last line feed between {@code start} and {@code end}, or {@code start} if there is none.
+     */
+    private static long lastLineEnd(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LineIndex.BUFFER_SIZE);
+        for (long position = end; position > start; ) {
+            int chunk = (int) Math.min(LineIndex.BUFFER_SIZE, position - start);
+            buffer.clear().limit(chunk);
+            channel.read(buffer, position - chunk);
+            for (int i = chunk - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return position - chunk + i + 1;
+                }
+            }
+            position -= chunk;
+        }
+        return start;
+    }
+
+    private static long countLineFeeds(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LineIndex.BUFFER_SIZE);
+        long count = 0;
+        for (long position = start; position < end; ) {
+            buffer.clear().limit((int) Math.min(LineIndex.BUFFER_SIZE, end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    count++;
+                }
+            }
+            position += read;
+        }
+        return count;
+    }
+
+    /**
+     * Move {@code position} forward past UTF-8 continuation bytes so a window never starts or ends mid-character.
+     */
+    private static long alignToCharacter(FileChannel channel, long position, long size) throws IOException {
+        for (int i = 0; i < 3 && position < size && (readByte(channel, position) & 0xC0) == 0x80; i++) {
+            position++;
+        }
+        return position;
+    }
+
+    private static byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer single = ByteBuffer.allocate(1);
+        channel.read(single, position);
+        return single.get(0);
+    }
+
+    /**
+     * UTF-8 text of the bytes from {@code start} to {@code end}, read as it is consumed. Malformed input is replaced.
+     */
+    private static Reader reader(FileChannel channel, long start, long end) {
+        InputStream bytes = new InputStream() {
+            private long position = start;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) > 0 ? single[0] & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                if (len == 0) {
+                    return 0;
+                }
+                int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            }
+        };
+        return new InputStreamReader(bytes, StandardCharsets.UTF_8);
+    }
 }
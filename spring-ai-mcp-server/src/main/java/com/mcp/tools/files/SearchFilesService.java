@@ -1,13 +1,14 @@
 package com.mcp.tools.files;
 
 import com.mcp.tools.AbstractToolService;
+import com.mcp.tools.fs.FileSystemCache;
+import com.mcp.tools.fs.FileTraversal;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -17,16 +18,31 @@ import java.util.regex.PatternSyntaxException;
 @Service
 public class SearchFilesService extends AbstractToolService {
 
+    public static final int DEFAULT_MAX_RESULTS = 500;
+
+    private final FileTraversal fileTraversal;
+
+    public SearchFilesService(FileTraversal fileTraversal) {
+        this.fileTraversal = fileTraversal;
+    }
+
     @Tool(description = """
        Recursively search for files and directories matching a pattern. Searches through all subdirectories from the
        starting path. The search is case-insensitive and matches partial names. Returns full paths to all matching
-       items. Great for finding files when you don't know their exact location.""")
+       items. Great for finding files when you don't know their exact location.
+       Results are returned in pages: when 'hasMore' is true, call again with the returned 'nextCursor'.""")
     public String searchFiles(@ToolParam(description = "The base path to search in") String path,
-                              @ToolParam(description = "The pattern to search for") String pattern) {
+                              @ToolParam(description = "The pattern to search for") String pattern,
+                              @ToolParam(description = "Maximum number of results to return (default: 500)", required = false) Integer maxResults,
+                              @ToolParam(description = "Maximum directory depth below the base path (default: unlimited)", required = false) Integer maxDepth,
+                              @ToolParam(description = "Cursor returned by a previous call to get the next page", required = false) String cursor) {
 
         Map<String, Object> result = new HashMap<>();
         List<String> matchingPaths = new ArrayList<>();
 
+        int maxResultsValue = maxResults != null && maxResults > 0 ? maxResults : DEFAULT_MAX_RESULTS;
+        int maxDepthValue = maxDepth != null && maxDepth > 0 ? maxDepth : Integer.MAX_VALUE;
+
         try {
             Path basePath = Paths.get(path);
             if (!Files.exists(basePath)) {
@@ -35,49 +51,66 @@ public class SearchFilesService extends AbstractToolService {
                 return mapper.writeValueAsString(result);
             }
 
-            // Create the PathMatcher with the provided pattern
-            String normalizedPattern = pattern;
-            // If it doesn't start with glob:, add it
-            if (!normalizedPattern.startsWith("glob:")) {
-                normalizedPattern = "glob:" + normalizedPattern;
-            }
-
-            final PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher(normalizedPattern);
-
-            // Walk the file tree starting from the base path
-            Files.walkFileTree(basePath, new SimpleFileVisitor<>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                    Path relativePath = basePath.relativize(file);
-                    if (pathMatcher.matches(relativePath) ||
-                        pathMatcher.matches(file.getFileName())) {
-                        matchingPaths.add(file.toString());
+            // Compile and classify the pattern once for the whole walk
+            final GlobMatcher matcher = GlobMatcher.compile(pattern);
+            final Path resumeAfter = cursor != null && !cursor.isEmpty() ? Paths.get(cursor) : null;
+            final boolean[] hasMore = {false};
+            final Path[] lastMatch = {null};
+
+            // Walk the file tree starting from the base path, served from the listing cache when possible and
+            // skipping .gitignore'd entries. Entries come in name order, so the walk is stable across calls and can
+            // resume after the cursor.
+            if (Files.isDirectory(basePath)) {
+                fileTraversal.walk(basePath, maxDepthValue, new FileSystemCache.CachedFileVisitor() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, FileSystemCache.Entry entry) {
+                        Path relativePath = basePath.relativize(file);
+                        if (resumeAfter != null && compareWalkOrder(relativePath, resumeAfter) <= 0) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        return collect(file, relativePath);
                     }
-                    return FileVisitResult.CONTINUE;
-                }
-
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                    // Exclude hidden directories (starting with .)
-                    if (dir.getNameCount() > 0 &&
-                        (dir.getName(dir.getNameCount() - 1).startsWith(".") ||
-                         dir.getName(dir.getNameCount() - 1).startsWith("target"))) {
-                        return FileVisitResult.SKIP_SUBTREE;
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, FileSystemCache.Entry entry) {
+                        Path relativePath = basePath.relativize(dir);
+                        if (resumeAfter != null && compareWalkOrder(relativePath, resumeAfter) <= 0) {
+                            // Already returned in a previous page, unless the cursor lies inside it
+                            return resumeAfter.startsWith(relativePath)
+                                    ? FileVisitResult.CONTINUE
+                                    : FileVisitResult.SKIP_SUBTREE;
+                        }
+                        return collect(dir, relativePath);
                     }
 
-                    Path relativePath = basePath.relativize(dir);
-                    if (pathMatcher.matches(relativePath) ||
-                        pathMatcher.matches(dir.getFileName())) {
-                        matchingPaths.add(dir.toString());
+                    private FileVisitResult collect(Path path, Path relativePath) {
+                        if (!matcher.matches(relativePath, path.getFileName())) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        if (matchingPaths.size() >= maxResultsValue) {
+                            hasMore[0] = true;
+                            return FileVisitResult.TERMINATE;
+                        }
+                        matchingPaths.add(path.toString());
+                        lastMatch[0] = relativePath;
+                        return FileVisitResult.CONTINUE;
                     }
-                    return FileVisitResult.CONTINUE;
-                }
-            });
+                });
+            }
+
+            // The base path itself is only reported on the first page and does not count towards the limit
+            if (resumeAfter == null && matcher.matches(basePath.relativize(basePath), basePath.getFileName())) {
+                matchingPaths.add(0, basePath.toString());
+            }
 
             // Return the matched paths as JSON
 
             result.put("matches", matchingPaths);
             result.put("count", matchingPaths.size());
+            result.put("hasMore", hasMore[0]);
+            if (hasMore[0]) {
+                result.put("nextCursor", lastMatch[0].toString());
+            }
 
             return successMessage(result);
 
@@ -88,4 +121,18 @@ public class SearchFilesService extends AbstractToolService {
             return errorMessage("Failed to serialize error result");
         }
     }
+
+    /**
+     * Compare two relative paths in the order of the walk: element by element by name, a directory before its content.
+     */
+    private static int compareWalkOrder(Path a, Path b) {
+        int common = Math.min(a.getNameCount(), b.getNameCount());
+        for (int i = 0; i < common; i++) {
+            int cmp = a.getName(i).toString().compareTo(b.getName(i).toString());
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    }
 }
@@ -1,6 +1,8 @@
 package com.mcp.tools.files;
 
 import com.mcp.tools.AbstractToolService;
+import com.mcp.tools.ResultWriter;
+import com.mcp.tools.fs.FileTraversal;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
@@ -8,9 +10,7 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
@@ -18,6 +18,17 @@ public class SearchPatternInFilesService extends AbstractToolService {
 
     public static final int DEFAULT_MAX_RESULTS = 100;
 
+    // Escapes standing for characters or classes written as more than one letter or digit
+    private static final Pattern LONG_ESCAPE = Pattern.compile("\\\\[xuc0-9pPkN]");
+
+    private final TrigramIndexRegistry trigramIndexes;
+    private final FileTraversal fileTraversal;
+
+    public SearchPatternInFilesService(TrigramIndexRegistry trigramIndexes, FileTraversal fileTraversal) {
+        this.trigramIndexes = trigramIndexes;
+        this.fileTraversal = fileTraversal;
+    }
+
     @Tool(description = """
         Search files for text patterns, returning matches with line numbers and context.
         Functions like 'grep' with output tailored for LLM processing.
@@ -31,9 +42,6 @@ public class SearchPatternInFilesService extends AbstractToolService {
             @ToolParam(description = "Maximum number of results to return", required = false) Integer maxResults
     ) {
         Map<String, Object> result = new HashMap<>();
-        List<String> matchingSummaries = new ArrayList<>();
-        AtomicInteger totalMatches = new AtomicInteger(0);
-        int filesWithMatches = 0;
 
         // Default values
         boolean useRegexValue = useRegex != null && useRegex;
@@ -48,16 +56,34 @@ public class SearchPatternInFilesService extends AbstractToolService {
             }
 
             Pattern searchPattern = compilePattern(pattern, useRegexValue);
-            List<Path> filesToSearch = findFiles(basePath, fileExtension);
-
-            for (Path filePath : filesToSearch) {
-                if (totalMatches.get() >= maxResultsValue) break;
-                processFile(filePath, searchPattern, matchingSummaries, contextLinesValue, maxResultsValue, totalMatches);
-                filesWithMatches++;
+            Optional<List<Path>> indexedCandidates = trigramIndexes.candidates(basePath, pattern, useRegexValue);
+            List<GrepEngine.FileMatches> fileMatches;
+            try (Stream<Path> filesToSearch = indexedCandidates.isPresent()
+                    ? filterByExtension(indexedCandidates.get().stream(), fileExtension)
+                    : findFiles(basePath, fileExtension)) {
+                fileMatches = GrepEngine.search(filesToSearch, searchPattern, scanLiteral(pattern, useRegexValue),
+                        contextLinesValue, maxResultsValue);
             }
 
-            finalizeResults(result, matchingSummaries, totalMatches, filesWithMatches, maxResultsValue);
-            return successMessage(result);
+            int totalMatches = fileMatches.stream().mapToInt(GrepEngine.FileMatches::count).sum();
+            boolean limitReached = totalMatches >= maxResultsValue;
+            return successResult(writer -> {
+                writer.field("summary", String.format("Found %d matches in %d files", totalMatches, fileMatches.size()));
+                writer.startArray("results");
+                for (int i = 0; i < fileMatches.size(); i++) {
+                    if (i > 0) {
+                        writer.element("---");
+                    }
+                    writeFileMatches(fileMatches.get(i), writer);
+                }
+                writer.endArray();
+                writer.field("limitReached", limitReached);
+                writer.field("indexUsed", indexedCandidates.isPresent());
+            });
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorMessage("Search interrupted: " + e.getMessage());
 
         } catch (Exception e) {
             return errorMessage("Unexpected error: " + e.getMessage());
@@ -78,81 +104,52 @@ public class SearchPatternInFilesService extends AbstractToolService {
         return Pattern.compile(escapedPattern, Pattern.CASE_INSENSITIVE);
     }
 
-    private List<Path> findFiles(Path basePath, String fileExtension) throws IOException {
-        try (Stream<Path> paths = Files.walk(basePath)) {
-            return paths.filter(path -> Files.isRegularFile(path) &&
-                            (fileExtension == null || fileExtension.isEmpty() || path.toString().endsWith(fileExtension)))
-                    .toList();
+    /**
+     * Literal to look for in the raw bytes before decoding a line. Non-ASCII literals are only used when the regex
+     * has no inline flags, since (?u) would make them match case-insensitively. Lines without the literal are never
+     * matched against the pattern, so regexes with escapes such as {@code \x41} or {@code \p{L}} are scanned
+     * without one: the full scan is the fallback of the index and must not depend on parsing them right.
+     */
+    private String scanLiteral(String pattern, boolean useRegex) {
+        if (useRegex && LONG_ESCAPE.matcher(pattern).find()) {
+            return null;
         }
-    }
-
-    private void processFile(Path filePath, Pattern searchPattern, List<String> matchingSummaries, int contextLinesValue, int maxResultsValue, AtomicInteger totalMatches) {
-        try {
-            List<String> lines = Files.readAllLines(filePath);
-            List<String> fileMatches = new ArrayList<>();
-
-            for (int i = 0; i < lines.size(); i++) {
-                if (searchPattern.matcher(lines.get(i)).find()) {
-                    totalMatches.incrementAndGet();
-                    fileMatches.add(formatMatch(filePath, lines, i, contextLinesValue));
-                    if (totalMatches.get() >= maxResultsValue) break;
-                }
-            }
-
-            if (!fileMatches.isEmpty()) {
-                addFileMatchesToSummary(filePath, matchingSummaries, fileMatches);
-            }
-        } catch (IOException e) {
-            // Skip files that can't be read
+        String literal = TrigramIndex.requiredLiteral(pattern, useRegex);
+        if (literal == null || (useRegex && pattern.contains("(?") && !literal.chars().allMatch(c -> c < 128))) {
+            return null;
         }
+        return literal;
     }
 
-    private String formatMatch(Path filePath, List<String> lines, int matchLineIndex, int contextLinesValue) {
-        StringBuilder matchInfo = new StringBuilder();
-        matchInfo.append(filePath.getFileName()).append(":").append(matchLineIndex + 1).append(": ");
-
-        if (contextLinesValue > 0) {
-            matchInfo.append(formatContext(lines, matchLineIndex, contextLinesValue));
-        } else {
-            matchInfo.append(lines.get(matchLineIndex));
-        }
-        return matchInfo.toString();
+    @Tool(description = """
+        Report statistics of the trigram index used by grepFiles: index builds, files (re-)indexed,
+        how often searches were answered from the index and how selective the index was.
+        """)
+    public String grepIndexStats() {
+        return successMessage(trigramIndexes.stats());
     }
 
-    private String formatContext(List<String> lines, int matchLineIndex, int contextLinesValue) {
-        StringBuilder context = new StringBuilder();
-        int startLine = Math.max(0, matchLineIndex - contextLinesValue);
-        int endLine = Math.min(lines.size(), matchLineIndex + 1 + contextLinesValue);
-
-        for (int j = startLine; j < endLine; j++) {
-            if (j == matchLineIndex) {
-                context.append("→ ");
-            } else {
-                context.append("  ");
-            }
-            context.append(lines.get(j)).append("\n");
-        }
-        if (endLine < lines.size()) {
-            context.append("...");
+    private Stream<Path> filterByExtension(Stream<Path> paths, String fileExtension) {
+        if (fileExtension == null || fileExtension.isEmpty()) {
+            return paths;
         }
-        return context.toString();
+        return paths.filter(path -> path.toString().endsWith(fileExtension));
     }
 
-    private void addFileMatchesToSummary(Path filePath, List<String> matchingSummaries, List<String> fileMatches) {
-        matchingSummaries.add(String.format("%s (%d matches)", filePath.toString(), fileMatches.size()));
-        matchingSummaries.addAll(fileMatches.subList(0, Math.min(fileMatches.size(), 5)));
-        if (fileMatches.size() > 5) {
-            matchingSummaries.add(String.format("... and %d more matches in this file", fileMatches.size() - 5));
-        }
-        matchingSummaries.add("---");
+    /**
+     * Lazily walk the tree, skipping .gitignore'd files.
+     */
+    private Stream<Path> findFiles(Path basePath, String fileExtension) throws IOException {
+        return filterByExtension(fileTraversal.files(basePath).map(FileTraversal.Visited::path), fileExtension);
     }
 
-    private void finalizeResults(Map<String, Object> result, List<String> matchingSummaries, AtomicInteger totalMatches, int filesWithMatches, int maxResultsValue) {
-        if (!matchingSummaries.isEmpty() && matchingSummaries.get(matchingSummaries.size() - 1).equals("---")) {
-            matchingSummaries.remove(matchingSummaries.size() - 1);
+    private void writeFileMatches(GrepEngine.FileMatches fileMatches, ResultWriter writer) throws IOException {
+        writer.element(String.format("%s (%d matches)", fileMatches.file().toString(), fileMatches.count()));
+        for (String line : fileMatches.shown()) {
+            writer.element(line);
+        }
+        if (fileMatches.count() > fileMatches.shown().size()) {
+            writer.element(String.format("... and %d more matches in this file", fileMatches.count() - fileMatches.shown().size()));
         }
-        result.put("summary", String.format("Found %d matches in %d files", totalMatches.get(), filesWithMatches));
-        result.put("results", matchingSummaries);
-        result.put("limitReached", totalMatches.get() >= maxResultsValue);
     }
 }
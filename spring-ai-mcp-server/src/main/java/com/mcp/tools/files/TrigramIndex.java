@@ -0,0 +1,498 @@
+package com.mcp.tools.files;
+
+import com.mcp.tools.fs.FileTraversal;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Inverted trigram index of every file below a root directory that is not ignored by a {@code .gitignore}.
+ * <p>
+ * Each file is decoded, lower-cased and split into overlapping three-character keys. A query for a literal
+ * returns the files containing all of the literal's trigrams, which is a superset of the files the literal
+ * occurs in. Entries are keyed by modification time and size so the index can be refreshed incrementally:
+ * only new or changed files are re-read and deleted files are dropped.
+ * <p>
+ * Instances are not thread safe, callers must synchronize (see {@link TrigramIndexRegistry}).
+ */
+class TrigramIndex {
+
+    static final int MIN_LITERAL_LENGTH = 3;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final long MAX_INDEXED_FILE_SIZE = 16L * 1024 * 1024;
+    private static final int BINARY_SNIFF_LENGTH = 8000;
+
+    private final Path root;
+    private final Map<String, FileEntry> files = new HashMap<>();
+    private final Map<Long, IntList> postings = new HashMap<>();
+    private final List<String> pathsById = new ArrayList<>();
+    private final BitSet liveIds = new BitSet();
+    private final BitSet unindexedIds = new BitSet();
+
+    private long lastRefreshMillis;
+
+    TrigramIndex(Path root) {
+        this.root = root;
+    }
+
+    Path root() {
+        return root;
+    }
+
+    long lastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+
+    int fileCount() {
+        return files.size();
+    }
+
+    int trigramCount() {
+        return postings.size();
+    }
+
+    /**
+     * Walk the tree and re-index new or modified files, dropping entries for deleted or ignored files.
+     *
+     * @return the number of files that were (re-)indexed
+     */
+    int refresh(FileTraversal traversal) throws IOException {
+        Set<String> seen = new HashSet<>();
+        int reindexed = 0;
+
+        try (Stream<FileTraversal.Visited> visited = traversal.files(root)) {
+            for (Iterator<FileTraversal.Visited> it = visited.iterator(); it.hasNext(); ) {
+                FileTraversal.Visited file = it.next();
+                String key = root.relativize(file.path()).toString();
+                seen.add(key);
+                FileEntry entry = files.get(key);
+                long mtime = file.entry().lastModified();
+                long size = file.entry().size();
+                if (entry == null || entry.mtime != mtime || entry.size != size) {
+                    if (entry != null) {
+                        liveIds.clear(entry.id);
+                    }
+                    files.put(key, indexFile(file.path(), key, mtime, size));
+                    reindexed++;
+                }
+            }
+        }
+
+        files.entrySet().removeIf(e -> {
+            if (!seen.contains(e.getKey())) {
+                liveIds.clear(e.getValue().id);
+                return true;
+            }
+            return false;
+        });
+
+        if (pathsById.size() > 2 * Math.max(files.size(), 1024)) {
+            compact();
+        }
+        lastRefreshMillis = System.currentTimeMillis();
+        return reindexed;
+    }
+
+    /**
+     * Return the files below {@code base} that may contain {@code literal}, sorted by path.
+     */
+    List<Path> candidates(Path base, String literal) {
+        long[] queryTrigrams = trigrams(literal);
+        IntList[] lists = new IntList[queryTrigrams.length];
+        for (int i = 0; i < queryTrigrams.length; i++) {
+            lists[i] = postings.getOrDefault(queryTrigrams[i], IntList.EMPTY);
+        }
+        Arrays.sort(lists, Comparator.comparingInt(l -> l.size));
+
+        BitSet matches = new BitSet();
+        IntList smallest = lists.length > 0 ? lists[0] : IntList.EMPTY;
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.values[i];
+            if (!liveIds.get(id)) {
+                continue;
+            }
+            boolean inAll = true;
+            for (int j = 1; j < lists.length && inAll; j++) {
+                inAll = lists[j].contains(id);
+            }
+            if (inAll) {
+                matches.set(id);
+            }
+        }
+        // Files too large to index can contain anything
+        BitSet unindexed = (BitSet) unindexedIds.clone();
+        unindexed.and(liveIds);
+        matches.or(unindexed);
+
+        Path relativeBase = root.relativize(base);
+        List<Path> result = new ArrayList<>();
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            Path relative = Paths.get(pathsById.get(id));
+            if (relativeBase.toString().isEmpty() || relative.startsWith(relativeBase)) {
+                result.add(root.resolve(relative));
+            }
+        }
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+
+    /**
+     * Extract a literal string that every match of {@code pattern} must contain, or {@code null} when
+     * the pattern does not have one of at least {@link #MIN_LITERAL_LENGTH} characters.
+     */
+    static String requiredLiteral(String pattern, boolean useRegex) {
+        if (!useRegex) {
+            return pattern.length() >= MIN_LITERAL_LENGTH ? pattern : null;
+        }
+        if (pattern.matches("(?s).*\\(\\?[a-zA-Z-]*x.*")) {
+            // Comments mode changes the meaning of whitespace
+            return null;
+        }
+
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (depth > 0) {
+                // Anything inside a group may be optional or part of an alternation
+                if (c == '\\') {
+                    i += escapeLength(pattern, i);
+                    continue;
+                } else if (c == '[') {
+                    i = skipCharClass(pattern, i) - 1;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                i++;
+                continue;
+            }
+            switch (c) {
+                case '|':
+                    return null;
+                case '(':
+                    best = longer(best, run);
+                    run.setLength(0);
+                    depth++;
+                    i++;
+                    break;
+                case '[':
+                    best = longer(best, run);
+                    run.setLength(0);
+                    i = skipCharClass(pattern, i);
+                    break;
+                case '?', '*', '{':
+                    // The preceding atom is optional
+                    if (!run.isEmpty()) {
+                        run.setLength(run.length() - 1);
+                    }
+                    best = longer(best, run);
+                    run.setLength(0);
+                    i = c == '{' ? Math.max(pattern.indexOf('}', i), i) + 1 : i + 1;
+                    break;
+                case '+':
+                    best = longer(best, run);
+                    run.setLength(0);
+                    i++;
+                    break;
+                case '.', '^', '$', ')':
+                    best = longer(best, run);
+                    run.setLength(0);
+                    i++;
+                    break;
+                case '\\':
+                    if (i + 1 >= pattern.length()) {
+                        return null;
+                    }
+                    char next = pattern.charAt(i + 1);
+                    if (next == 'Q') {
+                        int end = pattern.indexOf("\\E", i + 2);
+                        String quoted = end < 0 ? pattern.substring(i + 2) : pattern.substring(i + 2, end);
+                        run.append(quoted);
+                        i = end < 0 ? pattern.length() : end + 2;
+                    } else if (Character.isLetterOrDigit(next)) {
+                        // A character class, boundary, back reference or escaped code point such as \x41 or \p{L}
+                        best = longer(best, run);
+                        run.setLength(0);
+                        i += escapeLength(pattern, i);
+                    } else {
+                        run.append(next);
+                        i += 2;
+                    }
+                    break;
+                default:
+                    run.append(c);
+                    i++;
+            }
+        }
+        best = longer(best, run);
+        return best.length() >= MIN_LITERAL_LENGTH ? best : null;
+    }
+
+    void save(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(root.toString());
+            out.writeLong(lastRefreshMillis);
+            out.writeInt(pathsById.size());
+            for (String path : pathsById) {
+                out.writeUTF(path);
+            }
+            out.writeInt(files.size());
+            for (FileEntry entry : files.values()) {
+                out.writeInt(entry.id);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.size);
+                out.writeBoolean(unindexedIds.get(entry.id));
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<Long, IntList> posting : postings.entrySet()) {
+                out.writeLong(posting.getKey());
+                IntList ids = posting.getValue();
+                out.writeInt(ids.size);
+                for (int i = 0; i < ids.size; i++) {
+                    out.writeInt(ids.values[i]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static TrigramIndex load(Path file, Path root) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(root.toString())) {
+                return null;
+            }
+            TrigramIndex index = new TrigramIndex(root);
+            index.lastRefreshMillis = in.readLong();
+            int pathCount = in.readInt();
+            for (int i = 0; i < pathCount; i++) {
+                index.pathsById.add(in.readUTF());
+            }
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                int id = in.readInt();
+                FileEntry entry = new FileEntry(id, in.readLong(), in.readLong());
+                if (in.readBoolean()) {
+                    index.unindexedIds.set(id);
+                }
+                index.liveIds.set(id);
+                index.files.put(index.pathsById.get(id), entry);
+            }
+            int postingCount = in.readInt();
+            for (int i = 0; i < postingCount; i++) {
+                long trigram = in.readLong();
+                int size = in.readInt();
+                IntList ids = new IntList(size);
+                for (int j = 0; j < size; j++) {
+                    ids.add(in.readInt());
+                }
+                index.postings.put(trigram, ids);
+            }
+            return index;
+        }
+    }
+
+    private FileEntry indexFile(Path file, String key, long mtime, long size) {
+        int id = pathsById.size();
+        pathsById.add(key);
+        liveIds.set(id);
+
+        if (size > MAX_INDEXED_FILE_SIZE) {
+            unindexedIds.set(id);
+            return new FileEntry(id, mtime, size);
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (isBinary(bytes)) {
+                return new FileEntry(id, mtime, size);
+            }
+            for (long trigram : trigrams(new String(bytes, StandardCharsets.UTF_8))) {
+                postings.computeIfAbsent(trigram, t -> new IntList(4)).add(id);
+            }
+        } catch (IOException e) {
+            // Unreadable now, keep it as a candidate so the scan reports the same as without index
+            unindexedIds.set(id);
+        }
+        return new FileEntry(id, mtime, size);
+    }
+
+    /**
+     * Renumber live files densely and drop postings of deleted or re-indexed files.
+     */
+    private void compact() {
+        int[] remap = new int[pathsById.size()];
+        Arrays.fill(remap, -1);
+        List<String> newPaths = new ArrayList<>(files.size());
+        BitSet newUnindexed = new BitSet();
+        for (int id = liveIds.nextSetBit(0); id >= 0; id = liveIds.nextSetBit(id + 1)) {
+            remap[id] = newPaths.size();
+            if (unindexedIds.get(id)) {
+                newUnindexed.set(newPaths.size());
+            }
+            newPaths.add(pathsById.get(id));
+        }
+
+        Iterator<Map.Entry<Long, IntList>> it = postings.entrySet().iterator();
+        while (it.hasNext()) {
+            IntList ids = it.next().getValue();
+            int kept = 0;
+            for (int i = 0; i < ids.size; i++) {
+                int mapped = remap[ids.values[i]];
+                if (mapped >= 0) {
+                    ids.values[kept++] = mapped;
+                }
+            }
+            ids.size = kept;
+            if (kept == 0) {
+                it.remove();
+            }
+        }
+        files.replaceAll((path, entry) -> new FileEntry(remap[entry.id], entry.mtime, entry.size));
+
+        pathsById.clear();
+        pathsById.addAll(newPaths);
+        liveIds.clear();
+        liveIds.set(0, newPaths.size());
+        unindexedIds.clear();
+        unindexedIds.or(newUnindexed);
+    }
+
+    static boolean isBinary(byte[] bytes) {
+        int limit = Math.min(bytes.length, BINARY_SNIFF_LENGTH);
+        for (int i = 0; i < limit; i++) {
+            if (bytes[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Distinct lower-cased trigrams of {@code text}, each packed into a long.
+     */
+    static long[] trigrams(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+        long[] keys = new long[text.length() - 2];
+        char c0 = Character.toLowerCase(text.charAt(0));
+        char c1 = Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < text.length(); i++) {
+            char c2 = Character.toLowerCase(text.charAt(i));
+            keys[i - 2] = ((long) c0 << 32) | ((long) c1 << 16) | c2;
+            c0 = c1;
+            c1 = c2;
+        }
+        return Arrays.stream(keys).sorted().distinct().toArray();
+    }
+
+    /**
+     * Index just after the character class starting at {@code start}, including classes nested in it.
+     */
+    private static int skipCharClass(String pattern, int start) {
+        int i = start + 1;
+        if (i < pattern.length() && pattern.charAt(i) == '^') {
+            i++;
+        }
+        if (i < pattern.length() && pattern.charAt(i) == ']') {
+            i++;
+        }
+        while (i < pattern.length() && pattern.charAt(i) != ']') {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i += escapeLength(pattern, i);
+            } else if (c == '[') {
+                i = skipCharClass(pattern, i);
+            } else {
+                i++;
+            }
+        }
+        return i + 1;
+    }
+
+    /**
+     * Length of the escape sequence starting with the backslash at {@code start}, up to the end of the pattern.
+     * Back references take all following digits, which may drop literal digits but never adds any.
+     */
+    private static int escapeLength(String pattern, int start) {
+        int next = start + 1;
+        if (next >= pattern.length()) {
+            return 1;
+        }
+        int end = switch (pattern.charAt(next)) {
+            case 'Q' -> {
+                int quoteEnd = pattern.indexOf("\\E", next + 1);
+                yield quoteEnd < 0 ? pattern.length() : quoteEnd + 2;
+            }
+            case 'x' -> next + 1 < pattern.length() && pattern.charAt(next + 1) == '{'
+                    ? closing(pattern, next + 1, '}') : next + 3;
+            case 'u' -> next + 5;
+            case 'c' -> next + 2;
+            case 'p', 'P' -> next + 1 < pattern.length() && pattern.charAt(next + 1) == '{'
+                    ? closing(pattern, next + 1, '}') : next + 2;
+            case 'N' -> closing(pattern, next, '}');
+            case 'k' -> closing(pattern, next, '>');
+            case '0' -> digitsEnd(pattern, next + 1, 3, '7');
+            case '1', '2', '3', '4', '5', '6', '7', '8', '9' -> digitsEnd(pattern, next + 1, Integer.MAX_VALUE, '9');
+            default -> next + 1;
+        };
+        return Math.min(end, pattern.length()) - start;
+    }
+
+    private static int closing(String pattern, int from, char delimiter) {
+        int index = pattern.indexOf(delimiter, from);
+        return index < 0 ? pattern.length() : index + 1;
+    }
+
+    private static int digitsEnd(String pattern, int from, int maxDigits, char maxDigit) {
+        int i = from;
+        while (i < pattern.length() && i - from < maxDigits
+                && pattern.charAt(i) >= '0' && pattern.charAt(i) <= maxDigit) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    private record FileEntry(int id, long mtime, long size) {
+    }
+
+    /**
+     * Growable, sorted list of file ids.
+     */
+    private static final class IntList {
+
+        static final IntList EMPTY = new IntList(0);
+
+        int[] values;
+        int size;
+
+        IntList(int capacity) {
+            this.values = new int[capacity];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, size * 2));
+            }
+            values[size++] = value;
+        }
+
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+    }
+}
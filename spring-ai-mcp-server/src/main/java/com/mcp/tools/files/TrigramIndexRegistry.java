@@ -0,0 +1,177 @@
+package com.mcp.tools.files;
+
+import com.mcp.tools.fs.FileTraversal;
+import com.mcp.tools.fs.PrivateDirectories;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one {@link TrigramIndex} per searched root, persisted so it survives restarts. Indexes hold the paths and
+ * content trigrams of the trees they cover, and grep trusts them to skip files, so they are kept in a private
+ * directory (see {@link PrivateDirectories}) and only index files owned by the current user are loaded; when the
+ * directory can't be trusted, indexes live in memory only.
+ * A search below an already indexed root reuses that root's index. The index is refreshed before every query,
+ * which only re-reads files whose modification time or size changed, so content written just before a search is
+ * never missed.
+ */
+@Component
+public class TrigramIndexRegistry {
+
+    private static final int MAX_INDEXED_ROOTS = 8;
+
+    private final Map<Path, TrigramIndex> indexes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, TrigramIndex> eldest) {
+            return size() > MAX_INDEXED_ROOTS;
+        }
+    };
+
+    private final FileTraversal fileTraversal;
+    // Null when indexes are not persisted
+    private final Path indexDirectory;
+
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong buildMillis = new AtomicLong();
+    private final AtomicLong filesReindexed = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong indexHits = new AtomicLong();
+    private final AtomicLong noLiteralFallbacks = new AtomicLong();
+    private final AtomicLong staleFallbacks = new AtomicLong();
+    private final AtomicLong candidateFiles = new AtomicLong();
+    private final AtomicLong indexedFilesConsidered = new AtomicLong();
+
+    public TrigramIndexRegistry(FileTraversal fileTraversal,
+                                @Value("${mcp.files.index-directory:${user.home}/.cache/mcp-server/trigram-index}") String indexDirectory) {
+        this.fileTraversal = fileTraversal;
+        this.indexDirectory = PrivateDirectories.secure(Paths.get(indexDirectory));
+    }
+
+    /**
+     * Files below {@code base} that may match {@code pattern}, or empty when the index cannot answer and the caller
+     * must scan the whole tree.
+     */
+    public Optional<List<Path>> candidates(Path base, String pattern, boolean useRegex) {
+        queries.incrementAndGet();
+        String literal = TrigramIndex.requiredLiteral(pattern, useRegex);
+        if (literal == null) {
+            noLiteralFallbacks.incrementAndGet();
+            return Optional.empty();
+        }
+
+        Path normalizedBase = base.toAbsolutePath().normalize();
+        TrigramIndex index = indexFor(normalizedBase);
+        synchronized (index) {
+            try {
+                refresh(index);
+            } catch (IOException e) {
+                staleFallbacks.incrementAndGet();
+                return Optional.empty();
+            }
+            List<Path> candidates = index.candidates(normalizedBase, literal);
+            indexHits.incrementAndGet();
+            candidateFiles.addAndGet(candidates.size());
+            indexedFilesConsidered.addAndGet(index.fileCount());
+            return Optional.of(candidates);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        long queryCount = queries.get();
+        long considered = indexedFilesConsidered.get();
+        stats.put("indexedRoots", indexedRoots());
+        stats.put("builds", builds.get());
+        stats.put("buildMillis", buildMillis.get());
+        stats.put("filesReindexed", filesReindexed.get());
+        stats.put("queries", queryCount);
+        stats.put("indexHits", indexHits.get());
+        stats.put("noLiteralFallbacks", noLiteralFallbacks.get());
+        stats.put("staleFallbacks", staleFallbacks.get());
+        stats.put("hitRate", queryCount == 0 ? 0.0 : (double) indexHits.get() / queryCount);
+        stats.put("candidateRatio", considered == 0 ? 0.0 : (double) candidateFiles.get() / considered);
+        return stats;
+    }
+
+    private List<Map<String, Object>> indexedRoots() {
+        List<TrigramIndex> snapshot;
+        synchronized (indexes) {
+            snapshot = new ArrayList<>(indexes.values());
+        }
+        List<Map<String, Object>> roots = new ArrayList<>();
+        for (TrigramIndex index : snapshot) {
+            synchronized (index) {
+                roots.add(Map.of("root", index.root().toString(),
+                        "files", index.fileCount(),
+                        "trigrams", index.trigramCount(),
+                        "lastRefresh", index.lastRefreshMillis()));
+            }
+        }
+        return roots;
+    }
+
+    private TrigramIndex indexFor(Path base) {
+        synchronized (indexes) {
+            for (Map.Entry<Path, TrigramIndex> entry : indexes.entrySet()) {
+                if (base.startsWith(entry.getKey())) {
+                    return indexes.get(entry.getKey());
+                }
+            }
+            TrigramIndex index = loadPersisted(base);
+            indexes.put(base, index);
+            return index;
+        }
+    }
+
+    private void refresh(TrigramIndex index) throws IOException {
+        long start = System.currentTimeMillis();
+        int reindexed = index.refresh(fileTraversal);
+        if (reindexed > 0) {
+            builds.incrementAndGet();
+            buildMillis.addAndGet(System.currentTimeMillis() - start);
+            filesReindexed.addAndGet(reindexed);
+            if (indexDirectory != null) {
+                try {
+                    index.save(indexFile(index.root()));
+                } catch (IOException e) {
+                    // The in-memory index stays usable, it will be rebuilt after a restart
+                }
+            }
+        }
+    }
+
+    private TrigramIndex loadPersisted(Path root) {
+        if (indexDirectory == null) {
+            return new TrigramIndex(root);
+        }
+        Path file = indexFile(root);
+        if (PrivateDirectories.isOwned(file)) {
+            try {
+                TrigramIndex index = TrigramIndex.load(file, root);
+                if (index != null) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // Corrupt or outdated index file, rebuild from scratch
+            }
+        }
+        return new TrigramIndex(root);
+    }
+
+    private Path indexFile(Path root) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(root.toString().getBytes(StandardCharsets.UTF_8));
+            return indexDirectory.resolve(HexFormat.of().formatHex(digest) + ".idx");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.mcp.tools.files;
 
 import com.mcp.tools.AbstractToolService;
+import com.mcp.tools.fs.AtomicFileWriter;
+import com.mcp.tools.fs.FileSystemCache;
+import jakarta.annotation.PreDestroy;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
@@ -10,22 +13,46 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class WriteFileService extends AbstractToolService {
 
+    public static final String MODE_OVERWRITE = "overwrite";
+    public static final String MODE_APPEND = "append";
+    public static final String MODE_OFFSET = "offset";
+    public static final int MAX_WRITE_SESSIONS = 16;
+    public static final long WRITE_SESSION_IDLE_TIMEOUT_MS = 30 * 60 * 1000;
+
+    private final AtomicFileWriter fileWriter;
+    private final FileSystemCache fileSystemCache;
+    private final Map<String, WriteSession> sessions = new ConcurrentHashMap<>();
+
+    public WriteFileService(AtomicFileWriter fileWriter, FileSystemCache fileSystemCache) {
+        this.fileWriter = fileWriter;
+        this.fileSystemCache = fileSystemCache;
+    }
+
     @Tool(description = """
     Create or overwrite a file with new text content. 
     Caution: Existing files will be overwritten without notice.
     Supports proper text encoding.
+    The file is replaced atomically: readers never see a partially written file.
+    Use mode 'append' to add the content at the end of the file, or mode 'offset' to overwrite the bytes starting at
+    'offset'. To write a large file in several calls, use openWriteSession instead.
     """)
 
     public String writeFile(
             @ToolParam(description = "The path to the file to create or overwrite") String path,
-            @ToolParam(description = "The content to write to the file") String content
+            @ToolParam(description = "The content to write to the file") String content,
+            @ToolParam(description = "Write mode: 'overwrite' (default), 'append' or 'offset'", required = false) String mode,
+            @ToolParam(description = "Byte offset to write at, for mode 'offset'", required = false) Long offset,
+            @ToolParam(description = "Durability of the write: 'none', 'data' (fsync content, default) or 'full' (fsync content and directory)", required = false) String durability
     ) {
         Map<String, Object> result = new HashMap<>();
 
@@ -35,25 +62,235 @@ public class WriteFileService extends AbstractToolService {
             // Create parent directories if they don't exist
             Path parent = filePath.getParent();
             if (parent != null && !Files.exists(parent)) {
-                Files.createDirectories(parent);
+                fileSystemCache.createDirectories(parent);
                 result.put("createdDirectories", parent.toString());
             }
 
-            // Write the content to the file
-            boolean fileExisted = Files.exists(filePath);
-            Files.writeString(filePath, content, StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            AtomicFileWriter.Durability durabilityValue = durability != null
+                    ? AtomicFileWriter.Durability.parse(durability)
+                    : fileWriter.defaultDurability();
+
+            String modeValue = mode != null ? mode.trim().toLowerCase(Locale.ROOT) : MODE_OVERWRITE;
+            if (MODE_OFFSET.equals(modeValue) && (offset == null || offset < 0)) {
+                return errorMessage("Mode 'offset' requires a non-negative offset");
+            }
+
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            boolean fileExisted;
+            long size;
+            Lock lock = fileWriter.lockFor(filePath);
+            lock.lock();
+            try {
+                fileExisted = Files.exists(filePath);
+                switch (modeValue) {
+                    case MODE_OVERWRITE -> {
+                        // Write the content to a temp file and move it over the target
+                        fileWriter.write(filePath, bytes, durabilityValue);
+                        size = bytes.length;
+                    }
+                    case MODE_APPEND -> size = fileWriter.append(filePath, bytes, durabilityValue);
+                    case MODE_OFFSET -> {
+                        if (!fileExisted) {
+                            return errorMessage("File does not exist: " + path);
+                        }
+                        size = fileWriter.writeAt(filePath, offset, bytes, durabilityValue);
+                    }
+                    default -> {
+                        return errorMessage("Unknown mode '" + mode + "', expected overwrite, append or offset");
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
 
             result.put("path", path);
-            result.put("bytesWritten", content.getBytes(StandardCharsets.UTF_8).length);
-            result.put("action", fileExisted ? "overwritten" : "created");
+            result.put("bytesWritten", bytes.length);
+            result.put("size", size);
+            result.put("action", !fileExisted ? "created" : switch (modeValue) {
+                case MODE_APPEND -> "appended";
+                case MODE_OFFSET -> "patched";
+                default -> "overwritten";
+            });
 
             return successMessage(result);
 
         } catch (IOException e) {
             return errorMessage("Failed to write file: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return errorMessage(e.getMessage());
         } catch (Exception e) {
             return errorMessage("Failed to serialize error result");
         }
     }
-}
\ No newline at end of file
+
+    @Tool(description = """
+    Start writing a large file in several calls. Returns a sessionId: send the content in order with
+    appendToWriteSession, then call commitWriteSession to replace the file atomically with everything sent.
+    Nothing is visible at the path before the commit. Sessions left idle for 30 minutes are discarded.
+    """)
+    public String openWriteSession(@ToolParam(description = "The path to the file to create or overwrite") String path) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            expireIdleSessions();
+            if (sessions.size() >= MAX_WRITE_SESSIONS) {
+                return errorMessage("Too many open write sessions, commit or abort one first");
+            }
+
+            Path filePath = Paths.get(path);
+            Path parent = filePath.getParent();
+            if (parent != null && !Files.exists(parent)) {
+                fileSystemCache.createDirectories(parent);
+                result.put("createdDirectories", parent.toString());
+            }
+
+            String sessionId = UUID.randomUUID().toString();
+            sessions.put(sessionId, new WriteSession(filePath, fileWriter.open(filePath)));
+
+            result.put("sessionId", sessionId);
+            result.put("path", path);
+            return successMessage(result);
+
+        } catch (IOException e) {
+            return errorMessage("Failed to open write session: " + e.getMessage());
+        }
+    }
+
+    @Tool(description = "Append a chunk of content to an open write session.")
+    public String appendToWriteSession(@ToolParam(description = "The sessionId returned by openWriteSession") String sessionId,
+                                       @ToolParam(description = "The content to append") String content) {
+        Map<String, Object> result = new HashMap<>();
+
+        WriteSession session = sessions.get(sessionId);
+        if (session == null) {
+            return errorMessage("Unknown or expired write session: " + sessionId);
+        }
+
+        try {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            long size;
+            synchronized (session) {
+                if (session.closed) {
+                    return errorMessage("Write session is already closed: " + sessionId);
+                }
+                session.pending.write(bytes);
+                session.lastUsed = System.currentTimeMillis();
+                size = session.pending.size();
+            }
+
+            result.put("sessionId", sessionId);
+            result.put("bytesWritten", bytes.length);
+            result.put("size", size);
+            return successMessage(result);
+
+        } catch (IOException e) {
+            abort(sessionId);
+            return errorMessage("Failed to write, session aborted: " + e.getMessage());
+        }
+    }
+
+    @Tool(description = "Commit a write session: atomically replace the file with all content appended to the session.")
+    public String commitWriteSession(@ToolParam(description = "The sessionId returned by openWriteSession") String sessionId,
+                                     @ToolParam(description = "Durability of the write: 'none', 'data' (fsync content, default) or 'full' (fsync content and directory)", required = false) String durability) {
+        Map<String, Object> result = new HashMap<>();
+
+        // Checked first: a mistyped argument must not throw away everything appended so far
+        AtomicFileWriter.Durability durabilityValue;
+        try {
+            durabilityValue = durability != null
+                    ? AtomicFileWriter.Durability.parse(durability)
+                    : fileWriter.defaultDurability();
+        } catch (IllegalArgumentException e) {
+            return errorMessage(e.getMessage() + ", the session is still open");
+        }
+
+        WriteSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return errorMessage("Unknown or expired write session: " + sessionId);
+        }
+
+        try {
+            boolean fileExisted;
+            long size;
+            synchronized (session) {
+                session.closed = true;
+                size = session.pending.size();
+                Lock lock = fileWriter.lockFor(session.path);
+                lock.lock();
+                try {
+                    fileExisted = Files.exists(session.path);
+                    session.pending.commit(durabilityValue);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            result.put("path", session.path.toString());
+            result.put("size", size);
+            result.put("action", fileExisted ? "overwritten" : "created");
+            return successMessage(result);
+
+        } catch (IOException e) {
+            return errorMessage("Failed to commit write session: " + e.getMessage());
+        } finally {
+            closeQuietly(session);
+        }
+    }
+
+    @Tool(description = "Abort a write session and discard everything written to it. The file is left unchanged.")
+    public String abortWriteSession(@ToolParam(description = "The sessionId returned by openWriteSession") String sessionId) {
+        Map<String, Object> result = new HashMap<>();
+        if (!abort(sessionId)) {
+            return errorMessage("Unknown or expired write session: " + sessionId);
+        }
+        result.put("sessionId", sessionId);
+        return successMessage(result);
+    }
+
+    @PreDestroy
+    public void close() {
+        sessions.keySet().forEach(this::abort);
+    }
+
+    private boolean abort(String sessionId) {
+        WriteSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        closeQuietly(session);
+        return true;
+    }
+
+    private void expireIdleSessions() {
+        long now = System.currentTimeMillis();
+        sessions.forEach((id, session) -> {
+            if (now - session.lastUsed > WRITE_SESSION_IDLE_TIMEOUT_MS) {
+                abort(id);
+            }
+        });
+    }
+
+    private static void closeQuietly(WriteSession session) {
+        synchronized (session) {
+            session.closed = true;
+            try {
+                session.pending.close();
+            } catch (IOException e) {
+                // The temp file is left behind, nothing else to do
+            }
+        }
+    }
+
+    private static final class WriteSession {
+
+        private final Path path;
+        private final AtomicFileWriter.PendingFile pending;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private boolean closed;
+
+        WriteSession(Path path, AtomicFileWriter.PendingFile pending) {
+            this.path = path;
+            this.pending = pending;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.mcp.tools.folder;
 
 import com.mcp.tools.AbstractToolService;
+import com.mcp.tools.fs.FileSystemCache;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
@@ -15,6 +16,12 @@ import java.util.Map;
 @Service
 public class CreateDirectoryService extends AbstractToolService {
 
+    private final FileSystemCache fileSystemCache;
+
+    public CreateDirectoryService(FileSystemCache fileSystemCache) {
+        this.fileSystemCache = fileSystemCache;
+    }
+
     @Tool(description = """
                  Create a new directory or ensure a directory exists.
                  Can create multiple directories in one go.
@@ -32,7 +39,7 @@ public class CreateDirectoryService extends AbstractToolService {
 
                 if (!Files.exists(dirPath)) {
                     try {
-                        Files.createDirectories(dirPath);
+                        fileSystemCache.createDirectories(dirPath);
                     } catch (IOException e) {
                         return errorMessage( "Failed to create directory: " + e.getMessage());
                     }
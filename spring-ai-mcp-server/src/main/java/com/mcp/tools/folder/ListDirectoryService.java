@@ -1,13 +1,14 @@
 package com.mcp.tools.folder;
 
 import com.mcp.tools.AbstractToolService;
+import com.mcp.tools.fs.FileSystemCache;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -18,6 +19,12 @@ import java.util.Map;
 @Service
 public class ListDirectoryService extends AbstractToolService {
 
+    private final FileSystemCache fileSystemCache;
+
+    public ListDirectoryService(FileSystemCache fileSystemCache) {
+        this.fileSystemCache = fileSystemCache;
+    }
+
     @Tool(description = """
     Get a detailed listing of all files and directories in a specified path. Results clearly distinguish between files and directories with 
     [FILE] and [DIR] prefixes. This tool is essential for understanding directory structure and finding specific files within a directory.
@@ -29,39 +36,37 @@ public class ListDirectoryService extends AbstractToolService {
         try {
             Path dirPath = Paths.get(path);
 
-            if (!Files.exists(dirPath)) {
+            List<FileSystemCache.Entry> listing;
+            try {
+                listing = fileSystemCache.list(dirPath);
+            } catch (NoSuchFileException e) {
                 result.put(SUCCESS, false);
                 result.put(ERROR, "Path does not exist: " + path);
                 return mapper.writeValueAsString(result);
-            }
-
-            if (!Files.isDirectory(dirPath)) {
+            } catch (NotDirectoryException e) {
                 result.put(SUCCESS, false);
                 result.put(ERROR, "Path is not a directory: " + path);
                 return mapper.writeValueAsString(result);
             }
 
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
-                for (Path entry : stream) {
+            for (FileSystemCache.Entry entry : listing) {
 
-                    // Exclude hidden directories
-                    if (entry.getFileName().toString().startsWith(".")) {
-                        continue;
-                    }
+                // Exclude hidden directories
+                if (entry.name().startsWith(".")) {
+                    continue;
+                }
 
-                    Map<String, Object> fileInfo = new HashMap<>();
-                    boolean isDirectory = Files.isDirectory(entry);
+                Map<String, Object> fileInfo = new HashMap<>();
 
-                    fileInfo.put("name", entry.getFileName().toString());
-                    fileInfo.put("type", isDirectory ? "DIR" : "FILE");
-                    fileInfo.put("path", entry.toString());
+                fileInfo.put("name", entry.name());
+                fileInfo.put("type", entry.isDirectory() ? "DIR" : "FILE");
+                fileInfo.put("path", dirPath.resolve(entry.name()).toString());
 
-                    addSizeForFiles(entry, isDirectory, fileInfo);
+                addSizeForFiles(entry, fileInfo);
 
-                    addLastModifiedTime(entry, fileInfo);
+                addLastModifiedTime(entry, fileInfo);
 
-                    entries.add(fileInfo);
-                }
+                entries.add(fileInfo);
             }
 
             sortResults(entries);
@@ -79,24 +84,16 @@ public class ListDirectoryService extends AbstractToolService {
         }
     }
 
-    private void addSizeForFiles(Path entry, boolean isDirectory, Map<String, Object> fileInfo) {
+    private void addSizeForFiles(FileSystemCache.Entry entry, Map<String, Object> fileInfo) {
         // Add size for files
-        if (!isDirectory) {
-            try {
-                fileInfo.put("size", Files.size(entry));
-            } catch (IOException e) {
-                fileInfo.put("size", "unknown");
-            }
+        if (!entry.isDirectory()) {
+            fileInfo.put("size", entry.size() >= 0 ? entry.size() : "unknown");
         }
     }
 
-    private void addLastModifiedTime(Path entry, Map<String, Object> fileInfo) {
+    private void addLastModifiedTime(FileSystemCache.Entry entry, Map<String, Object> fileInfo) {
         // Add last modified time
-        try {
-            fileInfo.put("lastModified", Files.getLastModifiedTime(entry).toMillis());
-        } catch (IOException e) {
-            fileInfo.put("lastModified", "unknown");
-        }
+        fileInfo.put("lastModified", entry.lastModified() >= 0 ? entry.lastModified() : "unknown");
     }
 
     private static void sortResults(List<Map<String, Object>> entries) {
@@ -0,0 +1,248 @@
+package com.mcp.tools.fs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replaces file contents atomically: the new content goes to a temp file in the same directory, which is then moved
+ * over the target. Readers see either the old or the new file, never a partial one, even if the process dies mid-write.
+ * <p>
+ * Writers of the same path serialize on a striped lock, taken around the whole read-modify-write by callers that need
+ * it; writes to different paths only contend when their paths hash to the same stripe.
+ */
+@Component
+public class AtomicFileWriter {
+
+    private static final int LOCK_STRIPES = 256;
+
+    /**
+     * How much to wait for the storage before reporting a write as done.
+     */
+    public enum Durability {
+        /** No fsync, the new file may be lost or empty after a power failure, but never partially written. */
+        NONE,
+        /** Fsync the file content before the move. */
+        DATA,
+        /** Fsync content and metadata, and the directory after the move so the rename itself is durable. */
+        FULL;
+
+        public static Durability parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown durability '" + value + "', expected none, data or full");
+            }
+        }
+    }
+
+    private final Durability defaultDurability;
+    private final FileSystemCache fileSystemCache;
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+    public AtomicFileWriter(@Value("${mcp.files.write-durability:data}") String defaultDurability,
+                            FileSystemCache fileSystemCache) {
+        this.defaultDurability = Durability.parse(defaultDurability);
+        this.fileSystemCache = fileSystemCache;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public Durability defaultDurability() {
+        return defaultDurability;
+    }
+
+    /**
+     * The lock guarding writes to {@code path}.
+     */
+    public Lock lockFor(Path path) {
+        int hash = path.toAbsolutePath().normalize().hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Atomically replace the content of {@code target}, creating it if needed. The permissions of an existing file are
+     * kept and a symbolic link is written through, not replaced.
+     */
+    public void write(Path target, byte[] content, Durability durability) throws IOException {
+        try (PendingFile pending = open(target)) {
+            pending.write(content);
+            pending.commit(durability);
+        }
+    }
+
+    /**
+     * Start a replacement of {@code target} that is written in several steps and only becomes visible on
+     * {@link PendingFile#commit}. Closing it without committing discards it.
+     */
+    public PendingFile open(Path target) throws IOException {
+        Path file = Files.isSymbolicLink(target) ? target.toRealPath() : target.toAbsolutePath();
+        Path temp = createTemp(file);
+        try {
+            copyPermissions(file, temp);
+            return new PendingFile(file, temp, FileChannel.open(temp, StandardOpenOption.WRITE), fileSystemCache);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Append to {@code target} in place, creating it if needed. Appends are not atomic: after a crash the file may end
+     * with part of {@code content}, but what was there before is untouched.
+     */
+    public long append(Path target, byte[] content, Durability durability) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            writeFully(channel, ByteBuffer.wrap(content), -1);
+            sync(channel, durability);
+            return channel.size();
+        } finally {
+            fileSystemCache.changed(target);
+        }
+    }
+
+    /**
+     * Overwrite the bytes of {@code target} starting at {@code offset}, extending the file if the content goes past its
+     * end. Like {@link #append}, this patches the file in place.
+     */
+    public long writeAt(Path target, long offset, byte[] content, Durability durability) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            if (offset > channel.size()) {
+                throw new IOException("Offset " + offset + " is past the end of the file (" + channel.size() + " bytes)");
+            }
+            writeFully(channel, ByteBuffer.wrap(content), offset);
+            sync(channel, durability);
+            return channel.size();
+        } finally {
+            fileSystemCache.changed(target);
+        }
+    }
+
+    /**
+     * New content for a file, written to a temp file next to it.
+     */
+    public static final class PendingFile implements Closeable {
+
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final FileSystemCache fileSystemCache;
+        private boolean committed;
+
+        private PendingFile(Path target, Path temp, FileChannel channel, FileSystemCache fileSystemCache) {
+            this.target = target;
+            this.temp = temp;
+            this.channel = channel;
+            this.fileSystemCache = fileSystemCache;
+        }
+
+        public Path target() {
+            return target;
+        }
+
+        public void write(byte[] content) throws IOException {
+            writeFully(channel, ByteBuffer.wrap(content), -1);
+        }
+
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        /**
+         * Sync the content as {@code durability} asks and move it over the target.
+         */
+        public void commit(Durability durability) throws IOException {
+            sync(channel, durability);
+            channel.close();
+            move(temp, target);
+            committed = true;
+            // The temp file is gone and the target changed, both in the same directory
+            fileSystemCache.changed(target);
+            if (durability == Durability.FULL) {
+                syncDirectory(target.getParent());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!committed && Files.deleteIfExists(temp)) {
+                fileSystemCache.changed(temp);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (position < 0) {
+                channel.write(buffer);
+            } else {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    private static void sync(FileChannel channel, Durability durability) throws IOException {
+        if (durability != Durability.NONE) {
+            channel.force(durability == Durability.FULL);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Same directory, so this only happens on unusual file systems; still better than truncating in place
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * An empty temp file next to {@code file}. Unlike {@link Files#createTempFile}, which makes it readable by the owner
+     * only, it gets the default permissions of new files (the umask), which a new target then keeps.
+     */
+    private static Path createTemp(Path file) throws IOException {
+        while (true) {
+            Path temp = file.resolveSibling("." + file.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // Taken by a concurrent write, try another name
+            }
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        PosixFileAttributeView source = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+        if (source != null && Files.exists(from)) {
+            Files.getFileAttributeView(to, PosixFileAttributeView.class)
+                    .setPermissions(source.readAttributes().permissions());
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories can't be opened on every platform (Windows), the rename is then as durable as the OS makes it
+        }
+    }
+}
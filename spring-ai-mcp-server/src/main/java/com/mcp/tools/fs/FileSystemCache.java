@@ -0,0 +1,288 @@
+package com.mcp.tools.fs;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Bounded in-memory cache of directory listings with the attributes of every entry.
+ * <p>
+ * Each cached directory is registered with a {@link WatchService}; any event in it (or the directory going away)
+ * drops its listing, so the next call reads it again. Directories are evicted least recently used first once the
+ * total number of cached entries exceeds the bound. On file systems without watch support nothing is cached.
+ * Changes made by the file tools themselves are reported through {@link #changed(Path)}, so they are seen by the next
+ * listing without waiting for the watcher.
+ */
+@Component
+public class FileSystemCache {
+
+    private static final int MAX_CACHED_ENTRIES = 500_000;
+
+    /**
+     * Attributes of a directory entry, read once. Links are followed for the type, size and modification time;
+     * size and modification time are -1 when they could not be read (e.g. a dangling link).
+     */
+    public record Entry(String name, boolean isDirectory, boolean isSymbolicLink, long size, long lastModified) {
+    }
+
+    /**
+     * Callback of {@link #walk(Path, CachedFileVisitor)}, like {@link FileVisitor} but fed from the cache.
+     */
+    public interface CachedFileVisitor {
+
+        FileVisitResult preVisitDirectory(Path dir, Entry entry);
+
+        FileVisitResult visitFile(Path file, Entry entry);
+    }
+
+    private final Map<Path, List<Entry>> listings = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Path, Object> loading = new HashMap<>();
+    private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+    private final List<Consumer<Path>> changeListeners = new CopyOnWriteArrayList<>();
+    private final WatchService watchService;
+    private int cachedEntries;
+
+    public FileSystemCache() {
+        this.watchService = newWatchService();
+        if (watchService != null) {
+            Thread.ofPlatform().daemon().name("fs-cache-watcher").start(this::processEvents);
+        }
+    }
+
+    /**
+     * Entries of {@code dir}, sorted by name.
+     *
+     * @throws NoSuchFileException   if the directory does not exist
+     * @throws NotDirectoryException if the path is not a directory
+     */
+    public List<Entry> list(Path dir) throws IOException {
+        Path key = dir.toAbsolutePath().normalize();
+        Object token = new Object();
+        synchronized (this) {
+            List<Entry> cached = listings.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            loading.put(key, token);
+        }
+
+        // Register before reading so that a change made while reading invalidates the result
+        WatchKey watchKey = register(key);
+        List<Entry> entries;
+        try {
+            entries = read(key);
+        } catch (IOException e) {
+            synchronized (this) {
+                loading.remove(key, token);
+            }
+            if (watchKey != null) {
+                watchKey.cancel();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            if (loading.remove(key, token) && watchKey != null && watchKey.isValid()) {
+                listings.put(key, entries);
+                watchKeys.put(key, watchKey);
+                cachedEntries += entries.size();
+                evict();
+            } else if (watchKey != null) {
+                watchKey.cancel();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Depth-first walk below {@code start} (excluded) using cached listings, entries of a directory in name order.
+     * Symbolic links to directories are reported as files and not followed; directories that cannot be read are
+     * skipped.
+     */
+    public void walk(Path start, CachedFileVisitor visitor) throws IOException {
+        walk(start, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Like {@link #walk(Path, CachedFileVisitor)}, but directories at {@code maxDepth} (children of {@code start}
+     * being at depth 1) are visited without descending into them.
+     */
+    public void walk(Path start, int maxDepth, CachedFileVisitor visitor) throws IOException {
+        walk(start, 1, maxDepth, visitor);
+    }
+
+    private boolean walk(Path dir, int depth, int maxDepth, CachedFileVisitor visitor) throws IOException {
+        List<Entry> entries;
+        try {
+            entries = list(dir);
+        } catch (IOException e) {
+            if (depth == 1) {
+                throw e;
+            }
+            return true;
+        }
+
+        for (Entry entry : entries) {
+            Path path = dir.resolve(entry.name());
+            FileVisitResult result;
+            if (entry.isDirectory() && !entry.isSymbolicLink()) {
+                result = visitor.preVisitDirectory(path, entry);
+                if (result == FileVisitResult.CONTINUE && depth < maxDepth
+                        && !walk(path, depth + 1, maxDepth, visitor)) {
+                    return false;
+                }
+            } else {
+                result = visitor.visitFile(path, entry);
+            }
+            if (result == FileVisitResult.TERMINATE) {
+                return false;
+            }
+            if (result == FileVisitResult.SKIP_SIBLINGS) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This server created, wrote, renamed or deleted {@code path}: drop the listing holding it right away instead of
+     * waiting for the watcher, which some platforms only poll every few seconds.
+     */
+    public void changed(Path path) {
+        Path parent = path.toAbsolutePath().normalize().getParent();
+        if (parent != null) {
+            invalidate(parent);
+        }
+        changeListeners.forEach(listener -> listener.accept(path));
+    }
+
+    /**
+     * Call {@code listener} with every path reported to {@link #changed(Path)}, for other caches of file contents.
+     */
+    public void onChange(Consumer<Path> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * {@link Files#createDirectories}, dropping the listing that gains the first created directory.
+     */
+    public void createDirectories(Path dir) throws IOException {
+        Path absolute = dir.toAbsolutePath().normalize();
+        Path firstCreated = null;
+        for (Path ancestor = absolute; ancestor != null && !Files.exists(ancestor); ancestor = ancestor.getParent()) {
+            firstCreated = ancestor;
+        }
+        Files.createDirectories(absolute);
+        if (firstCreated != null) {
+            changed(firstCreated);
+        }
+    }
+
+    public synchronized void invalidate(Path dir) {
+        Path key = dir.toAbsolutePath().normalize();
+        loading.remove(key);
+        List<Entry> removed = listings.remove(key);
+        if (removed != null) {
+            cachedEntries -= removed.size();
+        }
+        stopWatching(key);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private static List<Entry> read(Path dir) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    // Deleted while listing
+                    continue;
+                }
+                boolean isSymbolicLink = attrs.isSymbolicLink();
+                if (isSymbolicLink) {
+                    try {
+                        attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        entries.add(new Entry(path.getFileName().toString(), false, true, -1, -1));
+                        continue;
+                    }
+                }
+                entries.add(new Entry(path.getFileName().toString(), attrs.isDirectory(), isSymbolicLink,
+                        attrs.size(), attrs.lastModifiedTime().toMillis()));
+            }
+        }
+        entries.sort(Comparator.comparing(Entry::name));
+        return List.copyOf(entries);
+    }
+
+    private WatchKey register(Path dir) {
+        if (watchService == null) {
+            return null;
+        }
+        try {
+            return dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | ClosedWatchServiceException e) {
+            // Not watchable (e.g. inotify limit reached): serve it uncached
+            return null;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Path, List<Entry>>> it = listings.entrySet().iterator();
+        while (cachedEntries > MAX_CACHED_ENTRIES && it.hasNext()) {
+            Map.Entry<Path, List<Entry>> eldest = it.next();
+            cachedEntries -= eldest.getValue().size();
+            stopWatching(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    private void stopWatching(Path dir) {
+        WatchKey watchKey = watchKeys.remove(dir);
+        if (watchKey != null) {
+            watchKey.cancel();
+        }
+    }
+
+    private void processEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path dir = (Path) key.watchable();
+                key.pollEvents();
+                invalidate(dir);
+                if (!key.reset()) {
+                    // The directory itself is gone
+                    invalidate(dir);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private static WatchService newWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
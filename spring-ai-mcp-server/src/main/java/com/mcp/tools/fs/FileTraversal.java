@@ -0,0 +1,249 @@
+package com.mcp.tools.fs;
+
+import nl.basjes.gitignore.GitIgnore;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Tree traversal shared by the file tools. Listings come from the {@link FileSystemCache}, {@code .git} directories
+ * are never entered, and entries matched by a {@code .gitignore} file are pruned before descending into them.
+ * <p>
+ * Rules are taken from every {@code .gitignore} between the repository root (the closest ancestor holding a
+ * {@code .git} entry) and the visited directory; deeper files take precedence, as in git. Parsed files are cached
+ * and re-read when their size or modification time changes.
+ */
+@Component
+public class FileTraversal {
+
+    private static final String GIT_DIRECTORY = ".git";
+    private static final String GITIGNORE_FILE = ".gitignore";
+    private static final int MAX_CACHED_GITIGNORES = 1024;
+
+    private final FileSystemCache fileSystemCache;
+    private final Map<Path, ParsedGitIgnore> parsedGitIgnores = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, ParsedGitIgnore> eldest) {
+            return size() > MAX_CACHED_GITIGNORES;
+        }
+    };
+
+    public FileTraversal(FileSystemCache fileSystemCache) {
+        this.fileSystemCache = fileSystemCache;
+    }
+
+    /**
+     * A visited path with its cached attributes.
+     */
+    public record Visited(Path path, FileSystemCache.Entry entry) {
+    }
+
+    /**
+     * Depth-first walk below {@code start} (excluded), entries of a directory in name order, skipping ignored
+     * entries. Directories at {@code maxDepth} are visited without descending into them.
+     */
+    public void walk(Path start, int maxDepth, FileSystemCache.CachedFileVisitor visitor) throws IOException {
+        walk(start, 1, maxDepth, ancestorRules(start), visitor);
+    }
+
+    /**
+     * Lazily stream the paths of all non-directory entries below {@code start} that are not ignored.
+     */
+    public Stream<Visited> files(Path start) throws IOException {
+        Iterator<Visited> iterator = new FileIterator(start, ancestorRules(start));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private boolean walk(Path dir, int depth, int maxDepth, RuleChain inherited,
+                         FileSystemCache.CachedFileVisitor visitor) throws IOException {
+        List<FileSystemCache.Entry> entries;
+        try {
+            entries = fileSystemCache.list(dir);
+        } catch (IOException e) {
+            if (depth == 1) {
+                throw e;
+            }
+            return true;
+        }
+        RuleChain rules = withDirectoryRules(dir, entries, inherited);
+
+        for (FileSystemCache.Entry entry : entries) {
+            Path path = dir.resolve(entry.name());
+            if (isIgnored(rules, path, entry)) {
+                continue;
+            }
+            FileVisitResult result;
+            if (entry.isDirectory() && !entry.isSymbolicLink()) {
+                result = visitor.preVisitDirectory(path, entry);
+                if (result == FileVisitResult.CONTINUE && depth < maxDepth
+                        && !walk(path, depth + 1, maxDepth, rules, visitor)) {
+                    return false;
+                }
+            } else {
+                result = visitor.visitFile(path, entry);
+            }
+            if (result == FileVisitResult.TERMINATE) {
+                return false;
+            }
+            if (result == FileVisitResult.SKIP_SIBLINGS) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rules of the {@code .gitignore} files above {@code start} inside the same repository. Outside of a repository
+     * only the files found during the walk apply.
+     */
+    private RuleChain ancestorRules(Path start) {
+        Path normalizedStart = start.toAbsolutePath().normalize();
+        Deque<Path> ancestors = new ArrayDeque<>();
+        for (Path dir = normalizedStart; dir != null; dir = dir.getParent()) {
+            if (!dir.equals(normalizedStart)) {
+                ancestors.addFirst(dir);
+            }
+            if (containsEntry(dir, GIT_DIRECTORY)) {
+                RuleChain rules = null;
+                for (Path ancestor : ancestors) {
+                    try {
+                        rules = withDirectoryRules(ancestor, fileSystemCache.list(ancestor), rules);
+                    } catch (IOException e) {
+                        // Unreadable ancestor, its rules can't apply
+                    }
+                }
+                return rules;
+            }
+        }
+        return null;
+    }
+
+    private boolean containsEntry(Path dir, String name) {
+        try {
+            return fileSystemCache.list(dir).stream().anyMatch(entry -> entry.name().equals(name));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private RuleChain withDirectoryRules(Path dir, List<FileSystemCache.Entry> entries, RuleChain parent) {
+        for (FileSystemCache.Entry entry : entries) {
+            if (entry.name().equals(GITIGNORE_FILE) && !entry.isDirectory()) {
+                GitIgnore gitIgnore = parse(dir.resolve(GITIGNORE_FILE).toAbsolutePath().normalize(), entry);
+                return gitIgnore != null ? new RuleChain(dir.toAbsolutePath().normalize(), gitIgnore, parent) : parent;
+            }
+        }
+        return parent;
+    }
+
+    private GitIgnore parse(Path file, FileSystemCache.Entry entry) {
+        synchronized (parsedGitIgnores) {
+            ParsedGitIgnore parsed = parsedGitIgnores.get(file);
+            if (parsed != null && parsed.lastModified == entry.lastModified() && parsed.size == entry.size()) {
+                return parsed.gitIgnore;
+            }
+        }
+        try {
+            GitIgnore gitIgnore = new GitIgnore(Files.readString(file));
+            synchronized (parsedGitIgnores) {
+                parsedGitIgnores.put(file, new ParsedGitIgnore(entry.lastModified(), entry.size(), gitIgnore));
+            }
+            return gitIgnore;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isIgnored(RuleChain rules, Path path, FileSystemCache.Entry entry) {
+        boolean isDirectory = entry.isDirectory() && !entry.isSymbolicLink();
+        if (isDirectory && entry.name().equals(GIT_DIRECTORY)) {
+            return true;
+        }
+        Path absolute = null;
+        for (RuleChain chain = rules; chain != null; chain = chain.parent) {
+            if (absolute == null) {
+                absolute = path.toAbsolutePath().normalize();
+            }
+            String relative = chain.dir.relativize(absolute).toString().replace('\\', '/');
+            // Directory-only patterns ("build/") need the trailing separator
+            Boolean ignored = chain.gitIgnore.isIgnoredFile(isDirectory ? relative + "/" : relative);
+            if (ignored != null) {
+                return ignored;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The {@code .gitignore} rules in effect for a directory, deepest first.
+     */
+    private record RuleChain(Path dir, GitIgnore gitIgnore, RuleChain parent) {
+    }
+
+    private record ParsedGitIgnore(long lastModified, long size, GitIgnore gitIgnore) {
+    }
+
+    private final class FileIterator implements Iterator<Visited> {
+
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private Visited next;
+
+        FileIterator(Path start, RuleChain inherited) throws IOException {
+            List<FileSystemCache.Entry> entries = fileSystemCache.list(start);
+            stack.push(new Frame(start, entries.iterator(), withDirectoryRules(start, entries, inherited)));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (!frame.entries.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                FileSystemCache.Entry entry = frame.entries.next();
+                Path path = frame.dir.resolve(entry.name());
+                if (isIgnored(frame.rules, path, entry)) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    if (!entry.isSymbolicLink()) {
+                        descend(path, frame.rules);
+                    }
+                } else {
+                    next = new Visited(path, entry);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Visited next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Visited result = next;
+            next = null;
+            return result;
+        }
+
+        private void descend(Path dir, RuleChain rules) {
+            try {
+                List<FileSystemCache.Entry> entries = fileSystemCache.list(dir);
+                stack.push(new Frame(dir, entries.iterator(), withDirectoryRules(dir, entries, rules)));
+            } catch (IOException e) {
+                // Skip directories that can't be read
+            }
+        }
+    }
+
+    private record Frame(Path dir, Iterator<FileSystemCache.Entry> entries, RuleChain rules) {
+    }
+}
@@ -0,0 +1,101 @@
+package com.mcp.tools.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Directories for data the server reads back as trusted, such as its caches and indexes, private to the user running
+ * it. Other local users must not be able to read them, nor plant entries in them.
+ */
+public final class PrivateDirectories {
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private PrivateDirectories() {
+    }
+
+    /**
+     * {@code directory}, created accessible to its owner only if needed, or {@code null} if it can't be trusted. An
+     * existing one must be a directory (not a link) owned by the current user; its permissions are then narrowed, and
+     * if others could write to it, whatever they may have planted is deleted first.
+     */
+    public static Path secure(Path directory) {
+        try {
+            boolean posix = isPosix(directory);
+            if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+                if (posix) {
+                    Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                } else {
+                    Files.createDirectories(directory);
+                }
+            }
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                return null;
+            }
+            if (!posix) {
+                return directory;
+            }
+            PosixFileAttributeView view = Files.getFileAttributeView(directory, PosixFileAttributeView.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            PosixFileAttributes attributes = view.readAttributes();
+            if (!attributes.owner().equals(currentUser(directory))) {
+                return null;
+            }
+            Set<PosixFilePermission> permissions = attributes.permissions();
+            if (!permissions.equals(OWNER_ONLY)) {
+                view.setPermissions(OWNER_ONLY);
+                if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                        || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                    deleteEntries(directory);
+                }
+            }
+            return directory;
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether {@code file} is a regular file (not a link) owned by the current user. Always true where files have no
+     * POSIX owner.
+     */
+    public static boolean isOwned(Path file) {
+        try {
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+            return !isPosix(file)
+                    || Files.getOwner(file, LinkOption.NOFOLLOW_LINKS).equals(currentUser(file));
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static UserPrincipal currentUser(Path path) throws IOException {
+        return path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+    }
+
+    private static void deleteEntries(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                if (!Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
@@ -1,44 +1,185 @@
 package com.mcp.tools.web;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.mcp.tools.AbstractToolService;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import io.modelcontextprotocol.server.McpSyncServerExchange;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.McpToolUtils;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 public class FetchWebpageService extends AbstractToolService {
 
     private static final int DEFAULT_TIMEOUT_MS = 10000;
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final int DEFAULT_MAX_CHARS = 100_000;
+    private static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    private static final String LOGGER = "fetch";
+
+    private final WebFetcher webFetcher;
+
+    public FetchWebpageService(WebFetcher webFetcher) {
+        this.webFetcher = webFetcher;
+    }
 
     @Tool(description = """
         Retrieve HTML content from a specified URL using jsoup. 
         Options include setting a connection timeout and extracting webpage text content.
+        Pages are cached following the server's caching headers; 'cache' tells whether the result came from the
+        cache ('hit'), was confirmed unchanged by the server ('revalidated') or was fetched ('miss').
+        Format 'readable' (plain text) or 'markdown' extracts the main content while downloading, without
+        navigation, scripts, headers and footers, and stops at maxChars characters or maxBytes bytes of HTML;
+        'truncated' tells when it stopped early. Setting maxChars or maxBytes alone selects 'readable'.
+        Format 'text' reads at most 2 MB of the page unless the server is configured otherwise, and then also
+        sets 'truncated'.
         """)
     public String fetchWebpage(
             @ToolParam(description = "Webpage URL to retrieve") String url,
-            @ToolParam(description = "Connection timeout in milliseconds (default: 10000)", required = false) Integer timeoutMs) {
+            @ToolParam(description = "Connection timeout in milliseconds (default: 10000)", required = false) Integer timeoutMs,
+            @ToolParam(description = "'text' (whole page text, default), 'readable' or 'markdown'", required = false) String format,
+            @ToolParam(description = "Maximum characters of readable or markdown content (default: 100000)", required = false) Integer maxChars,
+            @ToolParam(description = "Maximum bytes of HTML to download for readable or markdown content (default: 10 MB)", required = false) Long maxBytes) {
 
         int timeout = (timeoutMs != null) ? timeoutMs : DEFAULT_TIMEOUT_MS;
 
         try {
-            Document doc = Jsoup.connect(url)
-                    .timeout(timeout)
-                    .get();
+            WebFetcher.Page page = fetch(url, timeout, extraction(format, maxChars, maxBytes));
 
             Map<String, Object> result = new HashMap<>();
             result.put("url", url);
-            result.put("content", doc.text());
-            result.put("title", doc.title());
+            result.put("content", page.content());
+            result.put("title", page.title());
+            result.put("cache", page.cacheStatus().name().toLowerCase(Locale.ROOT));
+            result.put("truncated", page.truncated());
 
             return successMessage(result);
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorMessage("Failed to access URL: " + url + ". Error: interrupted");
         } catch (Exception e) {
             return errorMessage("Failed to access URL: " + url + ". Error: " + e.getMessage());
         }
     }
+
+    @Tool(description = """
+        Retrieve the text content of several webpages at once, fetched in parallel (at most 6 at a time per host).
+        Returns one entry per URL, in the same order, each with its own success flag.
+        With streamResults, each page is also sent as a logging notification as soon as it is fetched.
+        """)
+    public String fetchWebpages(
+            @ToolParam(description = "Webpage URLs to retrieve (at most 50)") List<String> urls,
+            @ToolParam(description = "Timeout per page in milliseconds (default: 10000)", required = false) Integer timeoutMs,
+            @ToolParam(description = "Send each page as a logging notification as soon as it is fetched", required = false) Boolean streamResults,
+            @ToolParam(description = "'text' (whole page text, default), 'readable' or 'markdown', as for fetchWebpage", required = false) String format,
+            @ToolParam(description = "Maximum characters of readable or markdown content per page (default: 100000)", required = false) Integer maxChars,
+            ToolContext toolContext) {
+
+        if (urls == null || urls.isEmpty()) {
+            return errorMessage("No URLs given.");
+        }
+        if (urls.size() > MAX_BATCH_SIZE) {
+            return errorMessage("Too many URLs: " + urls.size() + ", at most " + MAX_BATCH_SIZE + " per call.");
+        }
+        int timeout = (timeoutMs != null) ? timeoutMs : DEFAULT_TIMEOUT_MS;
+        WebFetcher.Extraction extraction;
+        try {
+            extraction = extraction(format, maxChars, null);
+        } catch (IllegalArgumentException e) {
+            return errorMessage(e.getMessage());
+        }
+        McpSyncServerExchange exchange = Boolean.TRUE.equals(streamResults)
+                ? McpToolUtils.getMcpExchange(toolContext).orElse(null)
+                : null;
+
+        long start = System.nanoTime();
+        List<Map<String, Object>> pages = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (String url : urls) {
+                futures.add(executor.submit(() -> {
+                    Map<String, Object> page = fetchPage(url, timeout, extraction);
+                    if (exchange != null) {
+                        notifyPage(exchange, page);
+                    }
+                    return page;
+                }));
+            }
+            for (Future<Map<String, Object>> future : futures) {
+                pages.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorMessage("Fetching interrupted");
+        } catch (Exception e) {
+            return errorMessage("Unexpected error: " + e.getMessage());
+        }
+
+        long failed = pages.stream().filter(page -> !Boolean.TRUE.equals(page.get(SUCCESS))).count();
+        Map<String, Object> result = new HashMap<>();
+        result.put("pages", pages);
+        result.put("fetched", pages.size() - failed);
+        result.put("failed", failed);
+        result.put("elapsedMillis", (System.nanoTime() - start) / 1_000_000);
+        return successMessage(result);
+    }
+
+    /**
+     * The streaming extraction for these parameters, or {@code null} for the whole page text.
+     */
+    private static WebFetcher.Extraction extraction(String format, Integer maxChars, Long maxBytes) {
+        String mode = format != null && !format.isBlank() ? format.trim().toLowerCase(Locale.ROOT)
+                : maxChars != null || maxBytes != null ? "readable" : "text";
+        return switch (mode) {
+            case "text" -> null;
+            case "readable", "markdown" -> new WebFetcher.Extraction(mode.equals("markdown"),
+                    maxBytes != null ? maxBytes : DEFAULT_MAX_BYTES,
+                    maxChars != null && maxChars > 0 ? maxChars : DEFAULT_MAX_CHARS);
+            default -> throw new IllegalArgumentException("Unknown format: " + format + ", use text, readable or markdown.");
+        };
+    }
+
+    private WebFetcher.Page fetch(String url, int timeout, WebFetcher.Extraction extraction)
+            throws IOException, InterruptedException {
+        return extraction == null ? webFetcher.fetch(url, timeout) : webFetcher.extract(url, timeout, extraction);
+    }
+
+    private Map<String, Object> fetchPage(String url, int timeout, WebFetcher.Extraction extraction) {
+        Map<String, Object> page = new HashMap<>();
+        page.put("url", url);
+        try {
+            WebFetcher.Page fetched = fetch(url, timeout, extraction);
+            page.put("title", fetched.title());
+            page.put("content", fetched.content());
+            page.put("cache", fetched.cacheStatus().name().toLowerCase(Locale.ROOT));
+            page.put("truncated", fetched.truncated());
+            page.put(SUCCESS, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            page.put(SUCCESS, false);
+            page.put(ERROR, "Failed to access URL: " + url + ". Error: interrupted");
+        } catch (Exception e) {
+            page.put(SUCCESS, false);
+            page.put(ERROR, "Failed to access URL: " + url + ". Error: " + e.getMessage());
+        }
+        return page;
+    }
+
+    private void notifyPage(McpSyncServerExchange exchange, Map<String, Object> page) {
+        try {
+            exchange.loggingNotification(new McpSchema.LoggingMessageNotification(McpSchema.LoggingLevel.INFO, LOGGER,
+                    mapper.writeValueAsString(page)));
+        } catch (JsonProcessingException | RuntimeException e) {
+            // The client went away, the pages are still in the final result
+        }
+    }
 }
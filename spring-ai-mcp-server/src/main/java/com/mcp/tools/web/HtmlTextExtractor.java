@@ -0,0 +1,610 @@
+package com.mcp.tools.web;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Single-pass HTML to text (or Markdown) conversion that never builds a DOM: tags are tokenized from the reader as
+ * they arrive and text is written out immediately, so memory stays bounded by {@code maxChars} whatever the page size,
+ * and reading stops as soon as enough text was produced.
+ * <p>
+ * Boilerplate is dropped: scripts and styles, navigation, asides, forms, hidden elements, and headers and footers
+ * outside {@code <article>} or {@code <main>}. Unclosed and misnested tags are tolerated the way a reader expects
+ * rather than the way the HTML spec repairs them.
+ */
+final class HtmlTextExtractor {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_NAME_LENGTH = 32;
+    private static final int MAX_ATTRIBUTE_LENGTH = 2048;
+    private static final int MAX_TITLE_LENGTH = 1024;
+    // Text runs are decoded in pieces of about this size, to keep a huge text node from growing the buffer
+    private static final int TEXT_FLUSH_LENGTH = 8192;
+
+    private static final Set<String> SKIPPED = Set.of("nav", "aside", "form", "template", "svg", "math", "button",
+            "select", "canvas", "object", "dialog", "menu");
+    private static final Set<String> SKIPPED_OUTSIDE_CONTENT = Set.of("header", "footer");
+    private static final Set<String> SKIPPED_ROLES = Set.of("navigation", "banner", "contentinfo", "complementary",
+            "search", "menu", "menubar", "dialog");
+    // Content is not markup; these are skipped to their end tag
+    private static final Set<String> RAW_TEXT = Set.of("script", "style", "noscript", "textarea", "xmp", "iframe");
+    private static final Set<String> VOID = Set.of("area", "base", "br", "col", "embed", "hr", "img", "input", "link",
+            "meta", "param", "source", "track", "wbr");
+    private static final Set<String> BLOCKS = Set.of("p", "div", "section", "article", "main", "header", "footer",
+            "table", "thead", "tbody", "tfoot", "ul", "ol", "dl", "dt", "dd", "figure", "figcaption", "address",
+            "details", "summary", "hr", "center", "body", "html");
+
+    record Result(String title, String text, boolean truncated) {
+    }
+
+    private final Reader reader;
+    private final boolean markdown;
+    private final int maxChars;
+    private final URI base;
+
+    private final char[] buffer = new char[READ_BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final StringBuilder out = new StringBuilder();
+    private final StringBuilder text = new StringBuilder();
+    private String title;
+    private boolean full;
+
+    // Pending separators, written before the next text
+    private int pendingBreaks;
+    private boolean pendingSpace;
+
+    private String skipping;
+    private int skipDepth;
+    private int contentDepth;
+    private int preDepth;
+    private int quoteDepth;
+    private int linkStart = -1;
+    private String linkHref;
+    // Where the output was before an open link, with the separators then pending, to drop a link without text
+    private int linkRestore;
+    private int linkRestoreBreaks;
+    private boolean linkRestoreSpace;
+    private int cellsInRow;
+    // Item counter per open list, -1 for unordered lists
+    private final Deque<int[]> lists = new ArrayDeque<>();
+
+    private HtmlTextExtractor(Reader reader, boolean markdown, int maxChars, String baseUrl) {
+        this.reader = reader;
+        this.markdown = markdown;
+        this.maxChars = maxChars;
+        URI uri;
+        try {
+            uri = URI.create(baseUrl);
+        } catch (IllegalArgumentException e) {
+            uri = null;
+        }
+        this.base = uri;
+    }
+
+    /**
+     * Convert the HTML read from {@code reader}, stopping once {@code maxChars} were produced. Links are resolved
+     * against {@code baseUrl}.
+     */
+    static Result extract(Reader reader, boolean markdown, int maxChars, String baseUrl) throws IOException {
+        HtmlTextExtractor extractor = new HtmlTextExtractor(reader, markdown, maxChars, baseUrl);
+        extractor.run();
+        return new Result(extractor.title != null ? extractor.title : "", extractor.out.toString().strip(),
+                extractor.full);
+    }
+
+    private void run() throws IOException {
+        int c;
+        while (!full && (c = read()) != -1) {
+            if (c == '<' && isTagStart(peek())) {
+                flushText();
+                readTag();
+            } else {
+                text.append((char) c);
+                if (text.length() >= TEXT_FLUSH_LENGTH && (Character.isWhitespace(c) || text.length() >= 8 * TEXT_FLUSH_LENGTH)) {
+                    flushText();
+                }
+            }
+        }
+        flushText();
+    }
+
+    private static boolean isTagStart(int c) {
+        return c == '/' || c == '!' || c == '?' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // ---- Tokenizing
+
+    private void readTag() throws IOException {
+        int c = read();
+        if (c == '!') {
+            if (peek() == '-') {
+                read();
+                if (peek() == '-') {
+                    read();
+                    skipComment();
+                    return;
+                }
+            }
+            skipPast('>');
+        } else if (c == '?') {
+            skipPast('>');
+        } else if (c == '/') {
+            String name = readName(read());
+            skipPast('>');
+            endTag(name);
+        } else {
+            String name = readName(c);
+            Attributes attributes = readAttributes();
+            startTag(name, attributes);
+        }
+    }
+
+    private record Attributes(String href, String role, boolean hidden, boolean selfClosing) {
+    }
+
+    private String readName(int first) throws IOException {
+        StringBuilder name = new StringBuilder();
+        int c = first;
+        while (c != -1 && !Character.isWhitespace(c) && c != '>' && c != '/') {
+            if (name.length() < MAX_NAME_LENGTH) {
+                name.append(Character.toLowerCase((char) c));
+            }
+            c = read();
+        }
+        if (c != -1) {
+            unread();
+        }
+        return name.toString();
+    }
+
+    private Attributes readAttributes() throws IOException {
+        String href = null;
+        String role = null;
+        boolean hidden = false;
+        boolean selfClosing = false;
+        while (true) {
+            int c = read();
+            while (c != -1 && Character.isWhitespace(c)) {
+                c = read();
+            }
+            if (c == -1 || c == '>') {
+                break;
+            }
+            if (c == '/') {
+                selfClosing = peek() == '>';
+                continue;
+            }
+            String name = readAttributeName(c);
+            String value = null;
+            c = read();
+            while (c != -1 && Character.isWhitespace(c)) {
+                c = read();
+            }
+            if (c == '=') {
+                value = readAttributeValue();
+            } else if (c != -1) {
+                unread();
+            }
+            switch (name) {
+                case "href" -> href = value;
+                case "role" -> role = value;
+                case "hidden" -> hidden = true;
+                case "aria-hidden" -> hidden |= "true".equalsIgnoreCase(value);
+                default -> {
+                }
+            }
+            selfClosing = false;
+        }
+        return new Attributes(href, role, hidden, selfClosing);
+    }
+
+    private String readAttributeName(int first) throws IOException {
+        StringBuilder name = new StringBuilder();
+        int c = first;
+        while (c != -1 && !Character.isWhitespace(c) && c != '=' && c != '>' && (c != '/' || name.isEmpty())) {
+            if (name.length() < MAX_NAME_LENGTH) {
+                name.append(Character.toLowerCase((char) c));
+            }
+            c = read();
+        }
+        if (c != -1) {
+            unread();
+        }
+        return name.toString();
+    }
+
+    private String readAttributeValue() throws IOException {
+        int c = read();
+        while (c != -1 && Character.isWhitespace(c)) {
+            c = read();
+        }
+        StringBuilder value = new StringBuilder();
+        if (c == '"' || c == '\'') {
+            int quote = c;
+            while ((c = read()) != -1 && c != quote) {
+                if (value.length() < MAX_ATTRIBUTE_LENGTH) {
+                    value.append((char) c);
+                }
+            }
+        } else {
+            while (c != -1 && !Character.isWhitespace(c) && c != '>') {
+                if (value.length() < MAX_ATTRIBUTE_LENGTH) {
+                    value.append((char) c);
+                }
+                c = read();
+            }
+            if (c == '>') {
+                unread();
+            }
+        }
+        return Parser.unescapeEntities(value.toString(), true);
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    private void skipPast(char end) throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != end) {
+            // Skip
+        }
+    }
+
+    /**
+     * Read up to the end tag of a raw text element, keeping at most {@code keep} characters of its content.
+     */
+    private String readRawText(String name, int keep) throws IOException {
+        StringBuilder content = keep > 0 ? new StringBuilder() : null;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<' && peek() == '/') {
+                read();
+                String endName = readName(read());
+                if (endName.equals(name)) {
+                    skipPast('>');
+                    break;
+                }
+                if (content != null && content.length() < keep) {
+                    content.append("</").append(endName);
+                }
+            } else if (content != null && content.length() < keep) {
+                content.append((char) c);
+            }
+        }
+        return content != null ? content.toString() : null;
+    }
+
+    // ---- Tree events
+
+    private void startTag(String name, Attributes attributes) throws IOException {
+        if (name.equals("title")) {
+            String raw = readRawText(name, MAX_TITLE_LENGTH);
+            if (title == null) {
+                title = Parser.unescapeEntities(raw, false).strip().replaceAll("\\s+", " ");
+            }
+            return;
+        }
+        if (RAW_TEXT.contains(name)) {
+            readRawText(name, 0);
+            return;
+        }
+        boolean isVoid = VOID.contains(name) || attributes.selfClosing();
+        if (skipping != null) {
+            if (name.equals(skipping) && !isVoid) {
+                skipDepth++;
+            }
+            return;
+        }
+        if (!isVoid && (SKIPPED.contains(name)
+                || (SKIPPED_OUTSIDE_CONTENT.contains(name) && contentDepth == 0)
+                || attributes.hidden()
+                || (attributes.role() != null && SKIPPED_ROLES.contains(attributes.role().trim().toLowerCase(Locale.ROOT))))) {
+            skipping = name;
+            skipDepth = 1;
+            return;
+        }
+
+        switch (name) {
+            case "article", "main" -> {
+                contentDepth++;
+                block(2);
+            }
+            case "h1", "h2", "h3", "h4", "h5", "h6" -> {
+                block(2);
+                if (markdown) {
+                    open("#".repeat(name.charAt(1) - '0') + " ");
+                }
+            }
+            case "br" -> block(1);
+            case "hr" -> {
+                block(2);
+                if (markdown) {
+                    open("---");
+                    block(2);
+                }
+            }
+            case "ul", "ol" -> {
+                lists.push(new int[]{name.equals("ol") ? 0 : -1});
+                block(lists.size() == 1 ? 2 : 1);
+            }
+            case "li" -> {
+                block(1);
+                int[] counter = lists.peek();
+                String indent = "  ".repeat(Math.max(lists.size() - 1, 0));
+                open(indent + (counter == null || counter[0] < 0 ? "- " : ++counter[0] + ". "));
+            }
+            case "tr" -> {
+                block(1);
+                cellsInRow = 0;
+            }
+            case "td", "th" -> {
+                if (cellsInRow++ > 0) {
+                    close(" |");
+                    pendingSpace = true;
+                }
+            }
+            case "blockquote" -> {
+                block(2);
+                quoteDepth++;
+            }
+            case "pre" -> {
+                block(2);
+                if (markdown) {
+                    open("```");
+                    block(1);
+                }
+                preDepth++;
+            }
+            case "a" -> {
+                String href = resolve(attributes.href());
+                if (markdown && href != null && linkStart < 0) {
+                    linkRestore = out.length();
+                    linkRestoreBreaks = pendingBreaks;
+                    linkRestoreSpace = pendingSpace;
+                    open("[");
+                    linkStart = out.length();
+                    linkHref = href;
+                }
+            }
+            case "strong", "b" -> inlineStart("**");
+            case "em", "i" -> inlineStart("_");
+            case "code" -> {
+                if (preDepth == 0) {
+                    inlineStart("`");
+                }
+            }
+            default -> {
+                if (BLOCKS.contains(name)) {
+                    block(2);
+                }
+            }
+        }
+    }
+
+    private void endTag(String name) {
+        if (skipping != null) {
+            if (name.equals(skipping) && --skipDepth == 0) {
+                skipping = null;
+            }
+            return;
+        }
+        switch (name) {
+            case "article", "main" -> {
+                contentDepth = Math.max(contentDepth - 1, 0);
+                block(2);
+            }
+            case "h1", "h2", "h3", "h4", "h5", "h6" -> block(2);
+            case "ul", "ol" -> {
+                lists.poll();
+                block(lists.isEmpty() ? 2 : 1);
+            }
+            case "li", "tr" -> block(1);
+            case "blockquote" -> {
+                quoteDepth = Math.max(quoteDepth - 1, 0);
+                block(2);
+            }
+            case "pre" -> {
+                preDepth = Math.max(preDepth - 1, 0);
+                if (markdown) {
+                    block(1);
+                    open("```");
+                }
+                block(2);
+            }
+            case "a" -> {
+                if (linkStart >= 0) {
+                    if (out.length() == linkStart) {
+                        // No link text, drop the link
+                        out.setLength(linkRestore);
+                        pendingBreaks = Math.max(pendingBreaks, linkRestoreBreaks);
+                        pendingSpace |= linkRestoreSpace;
+                    } else {
+                        close("](" + linkHref + ")");
+                    }
+                    linkStart = -1;
+                }
+            }
+            case "strong", "b" -> inlineEnd("**");
+            case "em", "i" -> inlineEnd("_");
+            case "code" -> {
+                if (preDepth == 0) {
+                    inlineEnd("`");
+                }
+            }
+            default -> {
+                if (BLOCKS.contains(name)) {
+                    block(2);
+                }
+            }
+        }
+    }
+
+    private String resolve(String href) {
+        if (href == null || href.isBlank() || href.startsWith("#") || href.regionMatches(true, 0, "javascript:", 0, 11)) {
+            return null;
+        }
+        try {
+            return base != null ? base.resolve(href.strip().replace(" ", "%20")).toString() : href.strip();
+        } catch (IllegalArgumentException e) {
+            return href.strip();
+        }
+    }
+
+    // ---- Output
+
+    private void flushText() {
+        if (text.isEmpty()) {
+            return;
+        }
+        String decoded = Parser.unescapeEntities(text.toString(), false);
+        text.setLength(0);
+        if (skipping != null) {
+            return;
+        }
+        if (preDepth > 0) {
+            for (int i = 0; i < decoded.length() && !full; i++) {
+                char c = decoded.charAt(i);
+                if (c == '\n') {
+                    pendingBreaks++;
+                } else {
+                    writePending();
+                    append(c);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < decoded.length() && !full; i++) {
+            char c = decoded.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            } else {
+                writePending();
+                append(c);
+            }
+        }
+    }
+
+    /**
+     * Request {@code breaks} line breaks (2 for a blank line) before the next text.
+     */
+    private void block(int breaks) {
+        pendingBreaks = Math.max(pendingBreaks, breaks);
+        pendingSpace = false;
+    }
+
+    /**
+     * Write a marker that starts content, after the pending separators.
+     */
+    private void open(String marker) {
+        writePending();
+        append(marker);
+    }
+
+    /**
+     * Write a marker that ends content, directly after it.
+     */
+    private void close(String marker) {
+        append(marker);
+    }
+
+    private void inlineStart(String marker) {
+        if (markdown) {
+            if (pendingBreaks > 0 || pendingSpace) {
+                open(marker);
+            } else {
+                close(marker);
+            }
+        }
+    }
+
+    private void inlineEnd(String marker) {
+        if (markdown) {
+            close(marker);
+        }
+    }
+
+    private boolean atLineStart() {
+        return out.isEmpty() || out.charAt(out.length() - 1) == '\n';
+    }
+
+    private void writePending() {
+        if (pendingBreaks > 0) {
+            if (!out.isEmpty()) {
+                for (int i = 0; i < pendingBreaks; i++) {
+                    append('\n');
+                }
+            }
+            if (markdown && quoteDepth > 0) {
+                append("> ".repeat(quoteDepth));
+            }
+        } else if (pendingSpace && !atLineStart()) {
+            append(' ');
+        }
+        pendingBreaks = 0;
+        pendingSpace = false;
+    }
+
+    private void append(char c) {
+        if (out.length() >= maxChars) {
+            full = true;
+            return;
+        }
+        out.append(c);
+    }
+
+    private void append(String s) {
+        int room = maxChars - out.length();
+        if (s.length() > room) {
+            out.append(s, 0, Math.max(room, 0));
+            full = true;
+            return;
+        }
+        out.append(s);
+    }
+
+    // ---- Input
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        int c = read();
+        if (c != -1) {
+            position--;
+        }
+        return c;
+    }
+
+    /**
+     * Step back over the character just read; only valid right after a {@link #read()} that returned one.
+     */
+    private void unread() {
+        position--;
+    }
+}
@@ -0,0 +1,303 @@
+package com.mcp.tools.web;
+
+import com.mcp.tools.fs.PrivateDirectories;
+
+import java.io.*;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Disk cache of fetched pages as extracted text, so a hit needs neither the network nor the HTML parser.
+ * <p>
+ * Freshness follows the response: {@code Cache-Control: max-age} (less {@code Age}), else {@code Expires}, else 10%
+ * of the time since {@code Last-Modified}, capped at a day. Stale entries with an {@code ETag} or
+ * {@code Last-Modified} are revalidated with a conditional request. Responses with {@code no-store}, or that vary on
+ * request headers other than {@code Accept-Encoding}, are not stored. Entries are files named after the URL hash; the
+ * least recently used are deleted once their total size exceeds the bound, file modification times keeping the order
+ * across restarts.
+ * <p>
+ * Cached pages are served as if fetched, so the directory must be private (see {@link PrivateDirectories});
+ * otherwise nothing is cached.
+ */
+class HttpCache {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final long MAX_HEURISTIC_FRESHNESS_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * A cached page. {@code expiresMillis} is when it becomes stale, 0 if it must be revalidated on every use.
+     */
+    record Entry(String url, String title, String content, String etag, String lastModified, long expiresMillis) {
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiresMillis;
+        }
+    }
+
+    // Null when the directory can't be trusted
+    private final Path directory;
+    private final long maxBytes;
+    // File name to size, least recently used first
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    HttpCache(Path directory, long maxBytes) {
+        this.directory = PrivateDirectories.secure(directory);
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    Entry get(String url) {
+        String name = fileName(url);
+        synchronized (this) {
+            // Also moves it to the most recently used end
+            if (files.get(name) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(name);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(url)) {
+                return null;
+            }
+            Entry entry = new Entry(in.readUTF(), readString(in), readString(in), readOptional(in), readOptional(in),
+                    in.readLong());
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            // Evicted meanwhile, or corrupt
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Store a page fetched with a 200 response, if its headers allow it. Returns whether it was stored.
+     */
+    boolean put(String url, HttpHeaders headers, String finalUrl, String title, String content) {
+        long expires = expiresMillis(headers);
+        String etag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        if (expires < 0 || (expires <= System.currentTimeMillis() && etag == null && lastModified == null)) {
+            return false;
+        }
+        store(url, new Entry(finalUrl, title, content, etag, lastModified, expires));
+        return true;
+    }
+
+    /**
+     * Update a stale entry after a 304 response, whose headers carry the new freshness. Returns the updated entry.
+     */
+    Entry revalidated(String url, Entry entry, HttpHeaders headers) {
+        long expires = expiresMillis(headers);
+        Entry updated = new Entry(entry.url(), entry.title(), entry.content(),
+                headers.firstValue("ETag").orElse(entry.etag()),
+                headers.firstValue("Last-Modified").orElse(entry.lastModified()),
+                Math.max(expires, 0));
+        if (expires < 0) {
+            remove(fileName(url));
+        } else {
+            store(url, updated);
+        }
+        return updated;
+    }
+
+    private void store(String url, Entry entry) {
+        if (directory == null) {
+            return;
+        }
+        String name = fileName(url);
+        Path file = directory.resolve(name);
+        Path tmp = directory.resolve(name + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(url);
+                out.writeUTF(entry.url());
+                writeString(out, entry.title());
+                writeString(out, entry.content());
+                writeOptional(out, entry.etag());
+                writeOptional(out, entry.lastModified());
+                out.writeLong(entry.expiresMillis());
+            }
+            long size = Files.size(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                Long previous = files.put(name, size);
+                totalBytes += size - (previous != null ? previous : 0);
+                evict();
+            }
+        } catch (IOException e) {
+            // Not cached, the page was still fetched
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // Left for the next start to clean up
+            }
+        }
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                // Counted as gone; a file that can't be deleted is overwritten on the next store
+            }
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private synchronized void remove(String name) {
+        Long size = files.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+            try {
+                Files.deleteIfExists(directory.resolve(name));
+            } catch (IOException e) {
+                // Overwritten on the next store
+            }
+        }
+    }
+
+    private synchronized void load() {
+        if (directory == null) {
+            return;
+        }
+        record CachedFile(String name, long size, long lastUsed) {
+        }
+        List<CachedFile> found = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.forEach(file -> {
+                try {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                        Files.deleteIfExists(file);
+                    } else {
+                        found.add(new CachedFile(name, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+                    }
+                } catch (IOException e) {
+                    // Skip it
+                }
+            });
+        } catch (IOException e) {
+            return;
+        }
+        found.sort(Comparator.comparingLong(CachedFile::lastUsed));
+        for (CachedFile file : found) {
+            files.put(file.name(), file.size());
+            totalBytes += file.size();
+        }
+        evict();
+    }
+
+    /**
+     * When a response stops being fresh, or -1 if it must not be stored.
+     */
+    static long expiresMillis(HttpHeaders headers) {
+        long now = System.currentTimeMillis();
+        Map<String, String> directives = cacheControl(headers);
+        if (directives.containsKey("no-store")) {
+            return -1;
+        }
+        for (String vary : headers.allValues("Vary")) {
+            for (String field : vary.split(",")) {
+                String name = field.trim();
+                if (!name.isEmpty() && !name.equalsIgnoreCase("Accept-Encoding")) {
+                    return -1;
+                }
+            }
+        }
+        if (directives.containsKey("no-cache")) {
+            return 0;
+        }
+
+        String maxAge = directives.get("max-age");
+        if (maxAge != null) {
+            try {
+                long age = headers.firstValue("Age").map(value -> Long.parseLong(value.trim())).orElse(0L);
+                return now + (Long.parseLong(maxAge) - age) * 1000;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        Optional<String> expires = headers.firstValue("Expires");
+        if (expires.isPresent()) {
+            // An invalid date, such as "0", means already expired
+            long expiresAt = parseDate(expires.get());
+            long date = headers.firstValue("Date").map(HttpCache::parseDate).orElse(now);
+            return expiresAt > 0 && date > 0 ? now + (expiresAt - date) : 0;
+        }
+        long lastModified = headers.firstValue("Last-Modified").map(HttpCache::parseDate).orElse(0L);
+        if (lastModified > 0 && lastModified < now) {
+            return now + Math.min((now - lastModified) / 10, MAX_HEURISTIC_FRESHNESS_MILLIS);
+        }
+        return 0;
+    }
+
+    private static Map<String, String> cacheControl(HttpHeaders headers) {
+        Map<String, String> directives = new HashMap<>();
+        for (String value : headers.allValues("Cache-Control")) {
+            for (String directive : value.split(",")) {
+                String[] parts = directive.trim().split("=", 2);
+                if (!parts[0].isEmpty()) {
+                    directives.put(parts[0].toLowerCase(Locale.ROOT),
+                            parts.length > 1 ? parts[1].trim().replace("\"", "") : "");
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static long parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String fileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest) + ".page";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mcp.tools.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Ends the stream after {@code maxBytes}, as if the content stopped there. A limit of 0 or less means unlimited.
+ * {@link #isLimitReached()} tells whether content was actually cut, not just read up to exactly the limit.
+ */
+class LimitedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private long count;
+    private boolean limitReached;
+
+    LimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    boolean isLimitReached() {
+        return limitReached;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (maxBytes > 0) {
+            long room = maxBytes - count;
+            if (room <= 0) {
+                limitReached = limitReached || in.read() != -1;
+                return -1;
+            }
+            len = (int) Math.min(len, room);
+        }
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        return Math.max(read(new byte[(int) Math.min(Math.max(n, 0), 8192)]), 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
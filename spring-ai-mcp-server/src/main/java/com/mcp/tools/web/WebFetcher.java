@@ -0,0 +1,370 @@
+package com.mcp.tools.web;
+
+import jakarta.annotation.PreDestroy;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetches web pages over one shared {@link HttpClient}, so connections are kept alive and reused across tool calls and
+ * HTTP/2 is negotiated where the server supports it. Requests to the same host are limited to a few at a time, so a
+ * batch of pages on one site doesn't hammer it. Pages are kept in an {@link HttpCache} as extracted text. Bodies are
+ * read as streams and cut after a maximum size, before and after decompression, so neither a huge page nor a
+ * compression bomb can exhaust memory.
+ */
+@Component
+public class WebFetcher {
+
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36";
+    private static final String ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,text/*;q=0.8";
+    private static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int CHARSET_SNIFF_BYTES = 4096;
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * How a page was obtained.
+     */
+    public enum CacheStatus {
+        /** Fetched, not from the cache. */
+        MISS,
+        /** From the cache, still fresh. */
+        HIT,
+        /** From the cache, after the server answered 304 Not Modified. */
+        REVALIDATED
+    }
+
+    /**
+     * A fetched page, as text.
+     */
+    public record Page(String url, String title, String content, CacheStatus cacheStatus, boolean truncated) {
+    }
+
+    /**
+     * Options of {@link #extract}: Markdown or plain text, and where to stop.
+     */
+    public record Extraction(boolean markdown, long maxBytes, int maxChars) {
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .executor(executor)
+            .build();
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final HttpCache cache;
+    private final long maxBodyBytes;
+
+    public WebFetcher(@Value("${mcp.web.cache-directory:${user.home}/.cache/mcp-server/http-cache}") String cacheDirectory,
+                      @Value("${mcp.web.max-body-bytes:2097152}") long maxBodyBytes) {
+        this.cache = new HttpCache(Paths.get(cacheDirectory), MAX_CACHE_BYTES);
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * Fetch {@code url} and extract its title and text, failing after {@code timeoutMs}, waiting for a free slot on
+     * the host included. Only the first {@code mcp.web.max-body-bytes} of the page are parsed; a page cut there is
+     * marked truncated and not cached.
+     *
+     * @throws IOException for network errors, error statuses and content that is not text
+     */
+    public Page fetch(String url, int timeoutMs) throws IOException, InterruptedException {
+        URI uri = parse(url);
+        String key = uri.toString();
+        HttpCache.Entry cached = cache.get(key);
+        if (cached != null && cached.isFresh()) {
+            return new Page(cached.url(), cached.title(), cached.content(), CacheStatus.HIT, false);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Semaphore permits = hostPermits.computeIfAbsent(uri.getHost().toLowerCase(Locale.ROOT),
+                host -> new Semaphore(MAX_REQUESTS_PER_HOST));
+        if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Timed out waiting for a connection to " + uri.getHost());
+        }
+        try {
+            Map<String, String> conditions = new HashMap<>();
+            if (cached != null && cached.etag() != null) {
+                conditions.put("If-None-Match", cached.etag());
+            }
+            if (cached != null && cached.lastModified() != null) {
+                conditions.put("If-Modified-Since", cached.lastModified());
+            }
+            HttpResponse<InputStream> response = send(uri, deadline, conditions, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                int status = response.statusCode();
+                if (status == 304 && cached != null) {
+                    HttpCache.Entry entry = cache.revalidated(key, cached, response.headers());
+                    return new Page(entry.url(), entry.title(), entry.content(), CacheStatus.REVALIDATED, false);
+                }
+                if (status < 200 || status >= 300) {
+                    throw new IOException("HTTP error fetching URL. Status=" + status);
+                }
+                String contentType = response.headers().firstValue("Content-Type").orElse("");
+                checkTextContent(contentType);
+
+                String finalUrl = response.uri().toString();
+                Document doc;
+                BoundedBody html;
+                CompletableFuture<Void> watchdog = closeAtDeadline(body, deadline);
+                try {
+                    html = BoundedBody.of(body, response.headers(), maxBodyBytes);
+                    doc = Jsoup.parse(html, charset(contentType), finalUrl);
+                } catch (IOException e) {
+                    throw System.nanoTime() - deadline >= 0 ? new IOException("Read timed out") : e;
+                } finally {
+                    watchdog.cancel(false);
+                }
+                Page page = new Page(finalUrl, doc.title(), doc.text(), CacheStatus.MISS, html.isTruncated());
+                if (status == 200 && !page.truncated()) {
+                    cache.put(key, response.headers(), page.url(), page.title(), page.content());
+                }
+                return page;
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Fetch {@code url} and convert it to text while it downloads, without building a DOM and without boilerplate
+     * (see {@link HtmlTextExtractor}). The download stops after {@code maxBytes} of HTML or once {@code maxChars} of
+     * text were produced, so memory stays bounded whatever the page size. Such pages are not cached.
+     */
+    public Page extract(String url, int timeoutMs, Extraction extraction) throws IOException, InterruptedException {
+        URI uri = parse(url);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Semaphore permits = hostPermits.computeIfAbsent(uri.getHost().toLowerCase(Locale.ROOT),
+                host -> new Semaphore(MAX_REQUESTS_PER_HOST));
+        if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Timed out waiting for a connection to " + uri.getHost());
+        }
+        try {
+            HttpResponse<InputStream> response = send(uri, deadline, Map.of(), HttpResponse.BodyHandlers.ofInputStream());
+            // Closing the body before its end cancels the rest of the download
+            try (InputStream body = response.body()) {
+                int status = response.statusCode();
+                if (status < 200 || status >= 300) {
+                    throw new IOException("HTTP error fetching URL. Status=" + status);
+                }
+                String contentType = response.headers().firstValue("Content-Type").orElse("");
+                checkTextContent(contentType);
+
+                CompletableFuture<Void> watchdog = closeAtDeadline(body, deadline);
+                try {
+                    BoundedBody html = BoundedBody.of(body, response.headers(), extraction.maxBytes());
+                    BufferedInputStream buffered = new BufferedInputStream(html, CHARSET_SNIFF_BYTES);
+                    Charset charset = Optional.ofNullable(charset(contentType)).map(Charset::forName)
+                            .orElseGet(() -> sniffCharset(buffered));
+                    HtmlTextExtractor.Result result = HtmlTextExtractor.extract(
+                            new InputStreamReader(buffered, charset), extraction.markdown(), extraction.maxChars(),
+                            response.uri().toString());
+                    return new Page(response.uri().toString(), result.title(), result.text(), CacheStatus.MISS,
+                            result.truncated() || html.isTruncated());
+                } catch (IOException e) {
+                    throw System.nanoTime() - deadline >= 0 ? new IOException("Read timed out") : e;
+                } finally {
+                    watchdog.cancel(false);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        client.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private <T> HttpResponse<T> send(URI uri, long deadline, Map<String, String> headers,
+                                     HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofNanos(Math.max(remaining, 1)))
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", ACCEPT)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        headers.forEach(builder::header);
+        HttpRequest request = builder.build();
+        // The request timeout only covers the response headers, the deadline also covers a body read as bytes
+        CompletableFuture<HttpResponse<T>> future = client.sendAsync(request, bodyHandler);
+        try {
+            return future.get(Math.max(deadline - System.nanoTime(), 1), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("Read timed out");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads of a body block on the network, closing it at the deadline makes them fail.
+     */
+    private CompletableFuture<Void> closeAtDeadline(InputStream body, long deadline) {
+        long remaining = deadline - System.nanoTime();
+        return CompletableFuture.runAsync(() -> closeQuietly(body),
+                CompletableFuture.delayedExecutor(Math.max(remaining, 0), TimeUnit.NANOSECONDS, executor));
+    }
+
+    private static URI parse(String url) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(url.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed URL: " + url);
+        }
+        String scheme = uri.getScheme();
+        if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))
+                || uri.getHost() == null) {
+            throw new IOException("Only http & https protocols supported");
+        }
+        return uri;
+    }
+
+    /**
+     * Same rule as jsoup: text and XML only, binary content would be parsed as garbage.
+     */
+    private static void checkTextContent(String contentType) throws IOException {
+        String mimeType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        if (!mimeType.isEmpty() && !mimeType.startsWith("text/") && !mimeType.equals("application/xml")
+                && !mimeType.endsWith("+xml")) {
+            throw new IOException("Unhandled content type: " + mimeType);
+        }
+    }
+
+    /**
+     * The charset named in the Content-Type header, or {@code null} to let jsoup detect it from the document.
+     */
+    private static String charset(String contentType) {
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                String name = trimmed.substring(8).replace("\"", "").replace("'", "").trim();
+                try {
+                    if (java.nio.charset.Charset.isSupported(name)) {
+                        return name;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Illegal charset name, detect it instead
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The charset declared in a {@code <meta>} tag near the start of the document, UTF-8 if none.
+     */
+    private static Charset sniffCharset(BufferedInputStream in) {
+        try {
+            in.mark(CHARSET_SNIFF_BYTES);
+            byte[] start = in.readNBytes(CHARSET_SNIFF_BYTES);
+            in.reset();
+            Matcher matcher = META_CHARSET.matcher(new String(start, StandardCharsets.ISO_8859_1));
+            if (matcher.find() && Charset.isSupported(matcher.group(1))) {
+                return Charset.forName(matcher.group(1));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Fall back to UTF-8, the read error shows again when extracting
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Closing to abort anyway
+        }
+    }
+
+    /**
+     * A decoded response body that ends after {@code maxBytes} of the body as sent or as decoded, whichever comes
+     * first. Cutting a compressed body ends the decoded one there too.
+     */
+    private static final class BoundedBody extends FilterInputStream {
+
+        private final LimitedInputStream encoded;
+        private final LimitedInputStream decoded;
+
+        private BoundedBody(LimitedInputStream encoded, LimitedInputStream decoded) {
+            super(decoded);
+            this.encoded = encoded;
+            this.decoded = decoded;
+        }
+
+        static BoundedBody of(InputStream body, HttpHeaders headers, long maxBytes) throws IOException {
+            LimitedInputStream encoded = new LimitedInputStream(body, maxBytes);
+            return new BoundedBody(encoded, new LimitedInputStream(decode(encoded, headers), maxBytes));
+        }
+
+        boolean isTruncated() {
+            return encoded.isLimitReached() || decoded.isLimitReached();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return in.read(b, off, len);
+            } catch (EOFException e) {
+                // The decompressor hit the end of the cut compressed body
+                if (encoded.isLimitReached()) {
+                    return -1;
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static InputStream decode(InputStream body, HttpHeaders headers) throws IOException {
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+    }
+}